@@ -8,10 +8,13 @@ import com.shweit.expendablebackpacks.listeners.BackpackInteractionListener;
 import com.shweit.expendablebackpacks.listeners.BackpackProtectionListener;
 import com.shweit.expendablebackpacks.listeners.BackpackSmithingListener;
 import com.shweit.expendablebackpacks.listeners.PlayerJoinListener;
+import com.shweit.expendablebackpacks.listeners.SharedBackpackListener;
 import com.shweit.expendablebackpacks.recipes.BackpackRecipes;
 import com.shweit.expendablebackpacks.storage.BackpackManager;
 import com.shweit.expendablebackpacks.util.BackpackBlockUtil;
+import com.shweit.expendablebackpacks.util.BackpackChunkIndex;
 import com.shweit.expendablebackpacks.util.BackpackScheduler;
+import java.util.concurrent.TimeUnit;
 import org.bstats.bukkit.Metrics;
 import org.bukkit.plugin.java.JavaPlugin;
 
@@ -36,6 +39,7 @@ public class ExpendableBackpacks extends JavaPlugin {
 
         // Initialize BackpackBlockUtil for block operations
         BackpackBlockUtil.initialize(this);
+        BackpackChunkIndex.initialize(this);
 
         // Initialize BackpackManager (storage)
         backpackManager = new BackpackManager(this);
@@ -47,13 +51,15 @@ public class ExpendableBackpacks extends JavaPlugin {
 
         // Register listeners
         getServer().getPluginManager().registerEvents(
-            new BackpackCraftingListener(backpackManager, this), this);
+            new BackpackCraftingListener(), this);
         getServer().getPluginManager().registerEvents(
             new BackpackSmithingListener(backpackManager), this);
         getServer().getPluginManager().registerEvents(
-            new BackpackInteractionListener(backpackManager), this);
+            new BackpackInteractionListener(backpackManager, backpackScheduler), this);
         getServer().getPluginManager().registerEvents(
-            new BackpackProtectionListener(), this);
+            new BackpackProtectionListener(backpackManager), this);
+        getServer().getPluginManager().registerEvents(
+            new SharedBackpackListener(backpackManager, backpackScheduler), this);
         getServer().getPluginManager().registerEvents(
             new BackpackBlockListener(), this);
         getServer().getPluginManager().registerEvents(
@@ -62,7 +68,7 @@ public class ExpendableBackpacks extends JavaPlugin {
             new com.shweit.expendablebackpacks.gui.BackpackGuideGUI(), this);
 
         // Register commands
-        BackpackCommand backpackCommand = new BackpackCommand(backpackManager);
+        BackpackCommand backpackCommand = new BackpackCommand(backpackManager, backpackScheduler);
         getCommand("backpack").setExecutor(backpackCommand);
         getCommand("backpack").setTabCompleter(backpackCommand);
 
@@ -78,11 +84,20 @@ public class ExpendableBackpacks extends JavaPlugin {
         shuttingDown = true;
         getLogger().info("Saving all backpack inventories...");
 
-        // Save all inventories
+        // Save all inventories, after the last shared backpack changes landed
         if (backpackManager != null) {
+            backpackManager.drainMailboxes();
             backpackManager.saveAllInventories();
         }
 
+        // Let queued writes and compactions finish before the storage is closed
+        if (backpackScheduler != null && !backpackScheduler.shutdownIo(30L, TimeUnit.SECONDS)) {
+            getLogger().warning("Backpack IO did not finish within 30 seconds!");
+        }
+        if (backpackManager != null) {
+            backpackManager.close();
+        }
+
         getLogger().info("Expendable Backpacks has been disabled. All data saved successfully.");
     }
 
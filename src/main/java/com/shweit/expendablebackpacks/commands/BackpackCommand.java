@@ -4,6 +4,7 @@ import com.shweit.expendablebackpacks.gui.BackpackGuideGUI;
 import com.shweit.expendablebackpacks.items.BackpackItem;
 import com.shweit.expendablebackpacks.items.BackpackTier;
 import com.shweit.expendablebackpacks.storage.BackpackManager;
+import com.shweit.expendablebackpacks.util.BackpackScheduler;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -24,15 +25,18 @@ import org.bukkit.inventory.ItemStack;
 public class BackpackCommand implements CommandExecutor, TabCompleter {
 
     private final BackpackManager backpackManager;
+    private final BackpackScheduler backpackScheduler;
 
     /**
      * Creates a new backpack command handler.
      *
      * @param backpackManager the backpack manager instance
+     * @param backpackScheduler the scheduler used to open backpacks and shown by /backpack stats
      */
     @SuppressWarnings("EI_EXPOSE_REP2")
-    public BackpackCommand(BackpackManager backpackManager) {
+    public BackpackCommand(BackpackManager backpackManager, BackpackScheduler backpackScheduler) {
         this.backpackManager = backpackManager;
+        this.backpackScheduler = backpackScheduler;
     }
 
     @Override
@@ -54,6 +58,8 @@ public class BackpackCommand implements CommandExecutor, TabCompleter {
                 return handleClear(sender, args);
             case "clone":
                 return handleClone(sender, args);
+            case "stats":
+                return handleStats(sender);
             case "help":
             case "?":
                 showGuide(sender);
@@ -81,7 +87,7 @@ public class BackpackCommand implements CommandExecutor, TabCompleter {
         sender.sendMessage("§6§l=== Backpack Plugin Guide ===");
         sender.sendMessage("");
         sender.sendMessage("§e§lBackpack Tiers:");
-        for (BackpackTier tier : BackpackTier.values()) {
+        for (BackpackTier tier : BackpackTier.all()) {
             sender.sendMessage("  " + tier.getDisplayName() + " §7- "
                 + tier.getRows() + " rows (" + tier.getSlots() + " slots)");
         }
@@ -190,11 +196,19 @@ public class BackpackCommand implements CommandExecutor, TabCompleter {
         }
 
         Player player = (Player) sender;
-        // Open with generic title since we don't know the tier
-        Inventory inventory = backpackManager.getInventory(backpackUUID, "§7Backpack", 27);
-        player.openInventory(inventory);
-        player.sendMessage("§aOpened backpack: §7"
-            + backpackUUID.toString().substring(0, 8) + "...");
+        // Read the backpack off the server threads, then open it on the player's thread
+        backpackManager.whenLoaded(backpackUUID).whenComplete((ignored, error) ->
+            backpackScheduler.runTask(() -> {
+                // Open with generic title since we don't know the tier
+                Inventory inventory = backpackManager.getInventory(backpackUUID, "§7Backpack", 27);
+                if (inventory == null) {
+                    player.sendMessage("§cThis backpack could not be loaded, see the server log.");
+                    return;
+                }
+                player.openInventory(inventory);
+                player.sendMessage("§aOpened backpack: §7"
+                    + backpackUUID.toString().substring(0, 8) + "...");
+            }, player));
         return true;
     }
 
@@ -275,6 +289,30 @@ public class BackpackCommand implements CommandExecutor, TabCompleter {
         return true;
     }
 
+    /**
+     * Handle the stats subcommand.
+     * Command: /backpack stats.
+     *
+     * @param sender the command sender
+     * @return true if handled successfully
+     */
+    private boolean handleStats(CommandSender sender) {
+        if (!sender.hasPermission("backpack.admin")) {
+            sender.sendMessage("§cYou don't have permission to use this command.");
+            return true;
+        }
+
+        sender.sendMessage("§6§l=== Backpack Scheduler ===");
+        sender.sendMessage("§7Scheduled: §f" + backpackScheduler.getScheduledTaskCount());
+        sender.sendMessage("§7Running: §f" + backpackScheduler.getRunningTaskCount());
+        sender.sendMessage("§7Completed: §f" + backpackScheduler.getCompletedTaskCount());
+        if (backpackScheduler.isFolia()) {
+            sender.sendMessage("§7Pending: §f" + backpackScheduler.getPendingTaskCount());
+        }
+        sender.sendMessage("§7IO queue: §f" + backpackScheduler.getIoQueueSize());
+        return true;
+    }
+
     @Override
     public List<String> onTabComplete(
             CommandSender sender, Command command, String alias, String[] args) {
@@ -282,7 +320,7 @@ public class BackpackCommand implements CommandExecutor, TabCompleter {
 
         if (args.length == 1) {
             // Subcommand completions
-            completions.addAll(Arrays.asList("give", "open", "clear", "clone", "help"));
+            completions.addAll(Arrays.asList("give", "open", "clear", "clone", "stats", "help"));
         } else if (args.length == 2) {
             String subcommand = args[0].toLowerCase();
 
@@ -307,7 +345,7 @@ public class BackpackCommand implements CommandExecutor, TabCompleter {
 
             if (subcommand.equals("give")) {
                 // Show tier names for give command
-                return Arrays.stream(BackpackTier.values())
+                return BackpackTier.all().stream()
                     .map(tier -> tier.name().toLowerCase())
                     .collect(Collectors.toList());
             }
@@ -2,6 +2,7 @@ package com.shweit.expendablebackpacks.gui;
 
 import com.shweit.expendablebackpacks.items.BackpackItem;
 import com.shweit.expendablebackpacks.items.BackpackTier;
+import com.shweit.expendablebackpacks.recipes.BackpackRecipeTable;
 import java.util.ArrayList;
 import java.util.List;
 import org.bukkit.Bukkit;
@@ -22,6 +23,7 @@ public class BackpackGuideGUI implements Listener {
 
     private static final String MAIN_TITLE = "§6§lBackpack Guide";
     private static final String DETAIL_TITLE_PREFIX = "§6§l";
+    private static final int[] GRID_SLOTS = {10, 11, 12, 19, 20, 21, 28, 29, 30};
 
     /**
      * Open the main guide GUI for a player.
@@ -40,11 +42,11 @@ public class BackpackGuideGUI implements Listener {
 
         // Show all backpack tiers
         int[] slots = {19, 20, 21, 22, 23, 24, 25, 28}; // Layout positions
-        BackpackTier[] tiers = BackpackTier.values();
+        List<BackpackTier> tiers = BackpackTier.all();
 
-        for (int i = 0; i < tiers.length && i < slots.length; i++) {
-            BackpackTier tier = tiers[i];
-            ItemStack backpack = BackpackItem.createBackpack(tier);
+        for (int i = 0; i < tiers.size() && i < slots.length; i++) {
+            BackpackTier tier = tiers.get(i);
+            ItemStack backpack = BackpackItem.createPreview(tier);
 
             // Add lore explaining to click for details
             ItemMeta meta = backpack.getItemMeta();
@@ -59,7 +61,7 @@ public class BackpackGuideGUI implements Listener {
             meta.setLore(lore);
             if (!backpack.setItemMeta(meta)) {
                 // Fallback if meta setting fails
-                backpack = BackpackItem.createBackpack(tier);
+                backpack = BackpackItem.createPreview(tier);
             }
 
             gui.setItem(slots[i], backpack);
@@ -107,7 +109,7 @@ public class BackpackGuideGUI implements Listener {
             DETAIL_TITLE_PREFIX + tier.getDisplayName());
 
         // The backpack itself
-        ItemStack backpack = BackpackItem.createBackpack(tier);
+        ItemStack backpack = BackpackItem.createPreview(tier);
         gui.setItem(4, backpack);
 
         // Features
@@ -152,15 +154,7 @@ public class BackpackGuideGUI implements Listener {
 
             case LEATHER:
                 // Pattern: L S L / L C L / L L L
-                gui.setItem(10, new ItemStack(Material.LEATHER));
-                gui.setItem(11, new ItemStack(Material.STRING));
-                gui.setItem(12, new ItemStack(Material.LEATHER));
-                gui.setItem(19, new ItemStack(Material.LEATHER));
-                gui.setItem(20, new ItemStack(Material.CHEST));
-                gui.setItem(21, new ItemStack(Material.LEATHER));
-                gui.setItem(28, new ItemStack(Material.LEATHER));
-                gui.setItem(29, new ItemStack(Material.LEATHER));
-                gui.setItem(30, new ItemStack(Material.LEATHER));
+                addCraftGrid(gui, BackpackRecipeTable.getCraft(tier));
 
                 ItemStack leatherInfo = createGuideItem(Material.CRAFTING_TABLE,
                     "§e§lCrafting Recipe",
@@ -174,18 +168,7 @@ public class BackpackGuideGUI implements Listener {
 
             case DIRT:
                 // Show surrounding pattern
-                Material[] dirt = {Material.DIRT, Material.DIRT, Material.DIRT,
-                    Material.DIRT, null, Material.DIRT,
-                    Material.DIRT, Material.DIRT, Material.DIRT};
-                int[] dirtSlots = {10, 11, 12, 19, 20, 21, 28, 29, 30};
-                for (int i = 0; i < dirtSlots.length; i++) {
-                    if (dirt[i] != null) {
-                        gui.setItem(dirtSlots[i], new ItemStack(dirt[i]));
-                    } else {
-                        gui.setItem(dirtSlots[i],
-                            BackpackItem.createBackpack(BackpackTier.LEATHER));
-                    }
-                }
+                addUpgradeGrid(gui, BackpackRecipeTable.getUpgrade(tier));
 
                 ItemStack dirtInfo = createGuideItem(Material.CRAFTING_TABLE,
                     "§e§lCrafting Recipe",
@@ -202,27 +185,13 @@ public class BackpackGuideGUI implements Listener {
             case GOLD:
             case DIAMOND:
                 // Show upgrade pattern
-                BackpackTier previous =
-                    BackpackTier.fromLevel(tier.getLevel() - 1);
-                Material upgradeMat = tier.getUpgradeMaterial();
-
-                Material[] pattern = {upgradeMat, upgradeMat, upgradeMat,
-                    upgradeMat, null, upgradeMat,
-                    upgradeMat, upgradeMat, upgradeMat};
-                int[] patternSlots = {10, 11, 12, 19, 20, 21, 28, 29, 30};
-                for (int i = 0; i < patternSlots.length; i++) {
-                    if (pattern[i] != null) {
-                        gui.setItem(patternSlots[i], new ItemStack(pattern[i]));
-                    } else {
-                        gui.setItem(patternSlots[i],
-                            BackpackItem.createBackpack(previous));
-                    }
-                }
+                BackpackRecipeTable.Upgrade upgrade = BackpackRecipeTable.getUpgrade(tier);
+                addUpgradeGrid(gui, upgrade);
 
                 ItemStack upgradeInfo = createGuideItem(Material.CRAFTING_TABLE,
                     "§e§lUpgrade Recipe",
-                    "§7Surround " + previous.getDisplayName(),
-                    "§7with 8x " + getDisplayName(upgradeMat),
+                    "§7Surround " + upgrade.base().getDisplayName(),
+                    "§7with 8x " + getDisplayName(upgrade.material()),
                     "",
                     "§7Your items are preserved!",
                     "§7UUID stays the same");
@@ -234,7 +203,7 @@ public class BackpackGuideGUI implements Listener {
                 gui.setItem(11, new ItemStack(
                     Material.NETHERITE_UPGRADE_SMITHING_TEMPLATE));
                 gui.setItem(20,
-                    BackpackItem.createBackpack(BackpackTier.DIAMOND));
+                    BackpackItem.createPreview(BackpackTier.DIAMOND));
                 gui.setItem(29, new ItemStack(Material.NETHERITE_INGOT));
 
                 ItemStack netheriteInfo = createGuideItem(Material.SMITHING_TABLE,
@@ -250,15 +219,7 @@ public class BackpackGuideGUI implements Listener {
 
             case ENDERPACK:
                 // Pattern: E P E / P C P / E I E
-                gui.setItem(10, new ItemStack(Material.ENDER_EYE));
-                gui.setItem(11, new ItemStack(Material.ENDER_PEARL));
-                gui.setItem(12, new ItemStack(Material.ENDER_EYE));
-                gui.setItem(19, new ItemStack(Material.ENDER_PEARL));
-                gui.setItem(20, new ItemStack(Material.CHEST));
-                gui.setItem(21, new ItemStack(Material.ENDER_PEARL));
-                gui.setItem(28, new ItemStack(Material.ENDER_EYE));
-                gui.setItem(29, new ItemStack(Material.IRON_BLOCK));
-                gui.setItem(30, new ItemStack(Material.ENDER_EYE));
+                addCraftGrid(gui, BackpackRecipeTable.getCraft(tier));
 
                 ItemStack enderInfo = createGuideItem(Material.CRAFTING_TABLE,
                     "§e§lCrafting Recipe",
@@ -271,11 +232,11 @@ public class BackpackGuideGUI implements Listener {
 
                 // Clone recipe
                 gui.setItem(14,
-                    BackpackItem.createBackpack(BackpackTier.ENDERPACK));
+                    BackpackItem.createPreview(BackpackTier.ENDERPACK));
                 gui.setItem(15, new ItemStack(Material.ENDER_PEARL));
 
                 ItemStack cloneResult =
-                    BackpackItem.createBackpack(BackpackTier.ENDERPACK);
+                    BackpackItem.createPreview(BackpackTier.ENDERPACK);
                 cloneResult.setAmount(2);
                 gui.setItem(17, cloneResult);
 
@@ -291,6 +252,35 @@ public class BackpackGuideGUI implements Listener {
         }
     }
 
+    /**
+     * Show the pattern of a craft recipe in the 3x3 grid of the detail view.
+     *
+     * @param gui the inventory GUI.
+     * @param craft the recipe from the recipe table.
+     */
+    private static void addCraftGrid(Inventory gui, BackpackRecipeTable.Craft craft) {
+        Material[] pattern = craft.pattern();
+        for (int i = 0; i < GRID_SLOTS.length; i++) {
+            gui.setItem(GRID_SLOTS[i], new ItemStack(pattern[i]));
+        }
+    }
+
+    /**
+     * Show an upgrade recipe in the 3x3 grid of the detail view.
+     *
+     * @param gui the inventory GUI.
+     * @param upgrade the recipe from the recipe table.
+     */
+    private static void addUpgradeGrid(Inventory gui, BackpackRecipeTable.Upgrade upgrade) {
+        for (int i = 0; i < GRID_SLOTS.length; i++) {
+            if (i == 4) {
+                gui.setItem(GRID_SLOTS[i], BackpackItem.createPreview(upgrade.base()));
+            } else {
+                gui.setItem(GRID_SLOTS[i], new ItemStack(upgrade.material()));
+            }
+        }
+    }
+
     /**
      * Add upgrade path information.
      *
@@ -408,13 +398,11 @@ public class BackpackGuideGUI implements Listener {
 
         // Main guide - clicking on backpack opens detail view
         if (title.equals(MAIN_TITLE)) {
-            if (BackpackItem.isBackpack(clicked)) {
-                BackpackTier tier = BackpackItem.getBackpackTier(clicked);
-                if (tier != null) {
-                    openTierDetail(player, tier);
-                    player.playSound(player.getLocation(),
-                        org.bukkit.Sound.UI_BUTTON_CLICK, 1.0f, 1.0f);
-                }
+            BackpackTier tier = BackpackItem.getPreviewTier(clicked);
+            if (tier != null) {
+                openTierDetail(player, tier);
+                player.playSound(player.getLocation(),
+                    org.bukkit.Sound.UI_BUTTON_CLICK, 1.0f, 1.0f);
             }
         } else if (title.startsWith(DETAIL_TITLE_PREFIX)) {
             // Detail view - back button
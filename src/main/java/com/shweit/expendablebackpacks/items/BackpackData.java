@@ -0,0 +1,21 @@
+package com.shweit.expendablebackpacks.items;
+
+import java.util.UUID;
+
+/**
+ * Immutable view of the backpack data stored on an item or block.
+ *
+ * @param backpackUuid the backpack UUID, or null if the stored value is invalid
+ * @param tier the backpack tier, or null if the stored value is invalid
+ */
+public record BackpackData(UUID backpackUuid, BackpackTier tier) {
+
+    /**
+     * Check if both the UUID and the tier could be read.
+     *
+     * @return true if the data is complete
+     */
+    public boolean isValid() {
+        return backpackUuid != null && tier != null;
+    }
+}
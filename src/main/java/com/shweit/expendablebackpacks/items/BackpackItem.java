@@ -2,8 +2,12 @@ package com.shweit.expendablebackpacks.items;
 
 import com.destroystokyo.paper.profile.PlayerProfile;
 import com.destroystokyo.paper.profile.ProfileProperty;
+import com.shweit.expendablebackpacks.util.UuidDataType;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
@@ -12,6 +16,7 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.inventory.meta.SkullMeta;
 import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataContainerView;
 import org.bukkit.persistence.PersistentDataType;
 import org.bukkit.plugin.Plugin;
 
@@ -22,8 +27,13 @@ public class BackpackItem {
 
     private static Plugin plugin;
     @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
-    private static NamespacedKey BACKPACK_UUID_KEY;
+    private static NamespacedKey BACKPACK_ID_KEY;
+    @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
+    private static NamespacedKey LEGACY_UUID_KEY;
     private static NamespacedKey BACKPACK_TIER_KEY;
+    private static final Map<BackpackTier, ItemStack> TEMPLATES = new EnumMap<>(BackpackTier.class);
+    private static final Map<BackpackTier, List<String>> TEMPLATE_LORE =
+        new EnumMap<>(BackpackTier.class);
 
     /**
      * Initialize the BackpackItem factory with plugin instance.
@@ -33,8 +43,16 @@ public class BackpackItem {
     @SuppressWarnings("EI_EXPOSE_STATIC_REP2")
     public static void initialize(Plugin pluginInstance) {
         plugin = pluginInstance;
-        BACKPACK_UUID_KEY = new NamespacedKey(plugin, "backpack_uuid");
+        BACKPACK_ID_KEY = new NamespacedKey(plugin, "backpack_id");
+        LEGACY_UUID_KEY = new NamespacedKey(plugin, "backpack_uuid");
         BACKPACK_TIER_KEY = new NamespacedKey(plugin, "backpack_tier");
+
+        // Everything except the UUID is the same for every backpack of a tier
+        for (BackpackTier tier : BackpackTier.all()) {
+            List<String> lore = buildLore(tier);
+            TEMPLATE_LORE.put(tier, lore);
+            TEMPLATES.put(tier, buildTemplate(tier, lore));
+        }
     }
 
     /**
@@ -49,6 +67,8 @@ public class BackpackItem {
 
     /**
      * Create a backpack item with a specific UUID (for cloning).
+     * Copies the prebuilt template of the tier and only adds the UUID, its lore line and
+     * the head profile of the backpack.
      *
      * @param tier the backpack tier.
      * @param uuid the UUID for the backpack.
@@ -56,13 +76,122 @@ public class BackpackItem {
      */
     @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
     public static ItemStack createBackpack(BackpackTier tier, UUID uuid) {
+        ItemStack item = TEMPLATES.get(tier).clone();
+        List<String> lore = new ArrayList<>(TEMPLATE_LORE.get(tier));
+        lore.add("§8ID: " + uuid.toString().substring(0, 8) + "...");
+
+        if (!item.editMeta(meta -> {
+            meta.setLore(lore);
+            meta.getPersistentDataContainer().set(BACKPACK_ID_KEY, UuidDataType.INSTANCE, uuid);
+            if (meta instanceof SkullMeta skullMeta && hasTexture(tier)) {
+                skullMeta.setPlayerProfile(createProfile(tier, uuid));
+            }
+        })) {
+            plugin.getLogger().warning("Failed to set item meta for backpack " + tier.name());
+        }
+        return item;
+    }
+
+    /**
+     * Create the preview of a freshly crafted backpack, shown in the crafting result slot.
+     * The preview is a copy of the tier template without a UUID; the real backpack is
+     * only created once the craft actually happens.
+     *
+     * @param tier the backpack tier.
+     * @return the preview item.
+     */
+    public static ItemStack createPreview(BackpackTier tier) {
+        return TEMPLATES.get(tier).clone();
+    }
+
+    /**
+     * Get the tier of a crafting preview created by {@link #createPreview(BackpackTier)}.
+     *
+     * @param item the item to check.
+     * @return the tier, or null if the item is not a preview.
+     */
+    public static BackpackTier getPreviewTier(ItemStack item) {
+        if (item == null || item.getType() != Material.PLAYER_HEAD) {
+            return null;
+        }
+        PersistentDataContainerView pdc = item.getPersistentDataContainer();
+        if (pdc.has(BACKPACK_ID_KEY) || pdc.has(LEGACY_UUID_KEY)) {
+            return null;
+        }
+        Integer level = pdc.get(BACKPACK_TIER_KEY, PersistentDataType.INTEGER);
+        return level == null ? null : BackpackTier.fromLevel(level);
+    }
+
+    /**
+     * Build the template of a tier: name, lore without the ID line, head texture and tier.
+     *
+     * @param tier the backpack tier.
+     * @param lore the lore of the tier.
+     * @return the template item.
+     */
+    private static ItemStack buildTemplate(BackpackTier tier, List<String> lore) {
         ItemStack item = new ItemStack(Material.PLAYER_HEAD);
         ItemMeta meta = item.getItemMeta();
 
         // Set display name
         meta.setDisplayName(tier.getDisplayName());
+        meta.setLore(lore);
+
+        // Set player head texture using Paper's profile API, backpacks replace the profile
+        if (meta instanceof SkullMeta skullMeta && hasTexture(tier)) {
+            try {
+                skullMeta.setPlayerProfile(createProfile(tier, UUID.nameUUIDFromBytes(
+                    ("ExpendableBackpacks:" + tier.name()).getBytes(StandardCharsets.UTF_8))));
+            } catch (Exception e) {
+                plugin.getLogger().severe("Failed to set texture for "
+                    + tier.name() + ": " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+
+        // Store NBT data
+        meta.getPersistentDataContainer().set(BACKPACK_TIER_KEY, PersistentDataType.INTEGER,
+            tier.getLevel());
+
+        if (!item.setItemMeta(meta)) {
+            plugin.getLogger().warning("Failed to set item meta for backpack " + tier.name());
+        }
+        return item;
+    }
 
-        // Set lore
+    /**
+     * Check if a tier has a real head texture configured.
+     *
+     * @param tier the backpack tier.
+     * @return true if the tier has a texture.
+     */
+    public static boolean hasTexture(BackpackTier tier) {
+        String textureValue = tier.getTextureValue();
+        return textureValue != null && !textureValue.startsWith("PLACEHOLDER");
+    }
+
+    /**
+     * Create the head profile of a backpack, used by backpack items and placed backpack blocks.
+     * The profile UUID is the backpack UUID, as it always was, so clones stack with backpacks
+     * created by earlier versions and a broken block drops the same head it was placed from.
+     *
+     * @param tier the backpack tier.
+     * @param backpackUuid the backpack UUID.
+     * @return the profile carrying the tier texture.
+     */
+    public static PlayerProfile createProfile(BackpackTier tier, UUID backpackUuid) {
+        PlayerProfile profile = Bukkit.createProfile(backpackUuid);
+        profile.getProperties().add(new ProfileProperty("textures", tier.getTextureValue()));
+        return profile;
+    }
+
+    /**
+     * Build the lore of a tier, without the ID line.
+     *
+     * @param tier the backpack tier.
+     * @return the lore lines.
+     */
+    private static List<String> buildLore(BackpackTier tier) {
         List<String> lore = new ArrayList<>();
         lore.add("§8" + tier.getRows() + " rows • " + tier.getSlots()
             + " slots");
@@ -73,39 +202,87 @@ public class BackpackItem {
         }
         lore.add("");
         lore.add("§7Right-click to open");
-        lore.add("§8ID: " + uuid.toString().substring(0, 8) + "...");
-        meta.setLore(lore);
+        return List.copyOf(lore);
+    }
 
-        // Set player head texture using Paper's profile API
-        if (meta instanceof SkullMeta skullMeta) {
-            String textureValue = tier.getTextureValue();
-            if (textureValue != null
-                && !textureValue.startsWith("PLACEHOLDER")) {
-                try {
-                    // Use the backpack UUID to ensure clones are stackable
-                    PlayerProfile profile = Bukkit.createProfile(uuid);
-                    profile.getProperties().add(
-                        new ProfileProperty("textures", textureValue));
-                    skullMeta.setPlayerProfile(profile);
-                } catch (Exception e) {
-                    plugin.getLogger().severe("Failed to set texture for "
-                        + tier.name() + ": " + e.getMessage());
-                    e.printStackTrace();
-                }
+    /**
+     * Read the backpack data of an item.
+     * Uses the read-only data container view, so no item meta is copied, and returns
+     * right away for anything that is not a player head.
+     *
+     * @param item the item to read.
+     * @return the backpack data, or null if the item is not a backpack.
+     */
+    public static BackpackData read(ItemStack item) {
+        if (item == null || item.getType() != Material.PLAYER_HEAD) {
+            return null;
+        }
+        PersistentDataContainerView pdc = item.getPersistentDataContainer();
+        UUID uuid;
+        if (pdc.has(BACKPACK_ID_KEY, UuidDataType.INSTANCE)) {
+            uuid = readId(pdc);
+        } else {
+            String uuidString = pdc.get(LEGACY_UUID_KEY, PersistentDataType.STRING);
+            if (uuidString == null) {
+                return null;
             }
+            uuid = parseLegacy(uuidString);
         }
+        Integer level = pdc.get(BACKPACK_TIER_KEY, PersistentDataType.INTEGER);
+        return new BackpackData(uuid, level == null ? null : BackpackTier.fromLevel(level));
+    }
 
-        // Store NBT data
-        PersistentDataContainer pdc = meta.getPersistentDataContainer();
-        pdc.set(BACKPACK_UUID_KEY, PersistentDataType.STRING,
-            uuid.toString());
-        pdc.set(BACKPACK_TIER_KEY, PersistentDataType.INTEGER,
-            tier.getLevel());
+    /**
+     * Read the binary backpack UUID.
+     *
+     * @param pdc the data container holding the UUID.
+     * @return the UUID, or null if the stored bytes are invalid.
+     */
+    private static UUID readId(PersistentDataContainerView pdc) {
+        try {
+            return pdc.get(BACKPACK_ID_KEY, UuidDataType.INSTANCE);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
 
-        if (!item.setItemMeta(meta)) {
-            plugin.getLogger().warning("Failed to set item meta for backpack " + tier.name());
+    /**
+     * Parse a UUID stored in the legacy string format.
+     *
+     * @param uuidString the stored string.
+     * @return the UUID, or null if the string is invalid.
+     */
+    private static UUID parseLegacy(String uuidString) {
+        try {
+            return UUID.fromString(uuidString);
+        } catch (IllegalArgumentException e) {
+            return null;
         }
-        return item;
+    }
+
+    /**
+     * Rewrite a backpack that still stores its UUID as a string to the binary format.
+     * Does nothing for items that are already migrated or are not backpacks. The item
+     * must be the live stack (e.g. from the player's inventory) for the change to stick.
+     *
+     * @param item the item to migrate.
+     * @return true if the item was rewritten.
+     */
+    public static boolean migrateLegacy(ItemStack item) {
+        if (item == null || item.getType() != Material.PLAYER_HEAD) {
+            return false;
+        }
+        String uuidString = item.getPersistentDataContainer().get(LEGACY_UUID_KEY,
+            PersistentDataType.STRING);
+        UUID uuid = uuidString == null ? null : parseLegacy(uuidString);
+        if (uuid == null) {
+            return false;
+        }
+        return item.editMeta(meta -> {
+            PersistentDataContainer pdc = meta.getPersistentDataContainer();
+            pdc.set(BACKPACK_ID_KEY, UuidDataType.INSTANCE, uuid);
+            pdc.remove(LEGACY_UUID_KEY);
+        });
     }
 
     /**
@@ -118,12 +295,9 @@ public class BackpackItem {
         if (item == null || item.getType() != Material.PLAYER_HEAD) {
             return false;
         }
-        ItemMeta meta = item.getItemMeta();
-        if (meta == null) {
-            return false;
-        }
-        return meta.getPersistentDataContainer().has(BACKPACK_UUID_KEY,
-            PersistentDataType.STRING);
+        PersistentDataContainerView pdc = item.getPersistentDataContainer();
+        return pdc.has(BACKPACK_ID_KEY, UuidDataType.INSTANCE)
+            || pdc.has(LEGACY_UUID_KEY, PersistentDataType.STRING);
     }
 
     /**
@@ -134,17 +308,8 @@ public class BackpackItem {
      */
     @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
     public static UUID getBackpackUUID(ItemStack item) {
-        if (!isBackpack(item)) {
-            return null;
-        }
-        ItemMeta meta = item.getItemMeta();
-        String uuidString = meta.getPersistentDataContainer().get(
-            BACKPACK_UUID_KEY, PersistentDataType.STRING);
-        try {
-            return UUID.fromString(uuidString);
-        } catch (IllegalArgumentException e) {
-            return null;
-        }
+        BackpackData data = read(item);
+        return data == null ? null : data.backpackUuid();
     }
 
     /**
@@ -154,16 +319,8 @@ public class BackpackItem {
      * @return the tier of the backpack, or null if not a backpack.
      */
     public static BackpackTier getBackpackTier(ItemStack item) {
-        if (!isBackpack(item)) {
-            return null;
-        }
-        ItemMeta meta = item.getItemMeta();
-        Integer level = meta.getPersistentDataContainer().get(
-            BACKPACK_TIER_KEY, PersistentDataType.INTEGER);
-        if (level == null) {
-            return null;
-        }
-        return BackpackTier.fromLevel(level);
+        BackpackData data = read(item);
+        return data == null ? null : data.tier();
     }
 
     /**
@@ -173,15 +330,11 @@ public class BackpackItem {
      * @return the cloned backpack, or null if not a valid backpack.
      */
     public static ItemStack cloneBackpack(ItemStack original) {
-        if (!isBackpack(original)) {
-            return null;
-        }
-        UUID uuid = getBackpackUUID(original);
-        BackpackTier tier = getBackpackTier(original);
-        if (uuid == null || tier == null) {
+        BackpackData data = read(original);
+        if (data == null || !data.isValid()) {
             return null;
         }
-        return createBackpack(tier, uuid);
+        return createBackpack(data.tier(), data.backpackUuid());
     }
 
     /**
@@ -192,13 +345,10 @@ public class BackpackItem {
      * @return the upgraded backpack, or null if not a valid backpack.
      */
     public static ItemStack upgradeBackpack(ItemStack original, BackpackTier newTier) {
-        if (!isBackpack(original)) {
-            return null;
-        }
-        UUID uuid = getBackpackUUID(original);
-        if (uuid == null) {
+        BackpackData data = read(original);
+        if (data == null || data.backpackUuid() == null) {
             return null;
         }
-        return createBackpack(newTier, uuid);
+        return createBackpack(newTier, data.backpackUuid());
     }
 }
@@ -1,5 +1,9 @@
 package com.shweit.expendablebackpacks.items;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import org.bukkit.Material;
 
 /**
@@ -55,6 +59,26 @@ public enum BackpackTier {
     private final Material upgradeMaterial;
     private final String colorCode;
 
+    private static final BackpackTier[] VALUES = values();
+    private static final List<BackpackTier> ALL = List.of(VALUES);
+    private static final BackpackTier[] BY_LEVEL;
+    private static final Map<String, BackpackTier> BY_NAME = new HashMap<>();
+    private static final Map<String, BackpackTier> BY_TITLE = new HashMap<>();
+
+    static {
+        int maxLevel = 0;
+        for (BackpackTier tier : VALUES) {
+            maxLevel = Math.max(maxLevel, tier.level);
+        }
+        BY_LEVEL = new BackpackTier[maxLevel + 1];
+        for (BackpackTier tier : VALUES) {
+            BY_LEVEL[tier.level] = tier;
+            BY_NAME.put(tier.name().toLowerCase(Locale.ROOT), tier);
+            BY_NAME.put(tier.displayName.toLowerCase(Locale.ROOT), tier);
+            BY_TITLE.put(tier.getDisplayName(), tier);
+        }
+    }
+
     /**
      * Constructor for BackpackTier.
      *
@@ -154,12 +178,10 @@ public enum BackpackTier {
      * @return the tier, or null if not found.
      */
     public static BackpackTier fromLevel(int level) {
-        for (BackpackTier tier : values()) {
-            if (tier.level == level) {
-                return tier;
-            }
+        if (level < 0 || level >= BY_LEVEL.length) {
+            return null;
         }
-        return null;
+        return BY_LEVEL[level];
     }
 
     /**
@@ -169,13 +191,32 @@ public enum BackpackTier {
      * @return the tier, or null if not found.
      */
     public static BackpackTier fromName(String name) {
-        for (BackpackTier tier : values()) {
-            if (tier.name().equalsIgnoreCase(name)
-                || tier.displayName.equalsIgnoreCase(name)) {
-                return tier;
-            }
+        if (name == null) {
+            return null;
+        }
+        return BY_NAME.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Get tier by its colored display name, as used for inventory titles.
+     *
+     * @param title the title.
+     * @return the tier, or null if not found.
+     */
+    public static BackpackTier fromTitle(String title) {
+        if (title == null) {
+            return null;
         }
-        return null;
+        return BY_TITLE.get(title);
+    }
+
+    /**
+     * Get all tiers without copying the enum constants on every call.
+     *
+     * @return an unmodifiable list of all tiers, in declaration order.
+     */
+    public static List<BackpackTier> all() {
+        return ALL;
     }
 
     /**
@@ -1,13 +1,12 @@
 package com.shweit.expendablebackpacks.listeners;
 
-import com.destroystokyo.paper.profile.PlayerProfile;
-import com.destroystokyo.paper.profile.ProfileProperty;
+import com.shweit.expendablebackpacks.items.BackpackData;
 import com.shweit.expendablebackpacks.items.BackpackItem;
 import com.shweit.expendablebackpacks.items.BackpackTier;
 import com.shweit.expendablebackpacks.util.BackpackBlockUtil;
+import com.shweit.expendablebackpacks.util.BackpackChunkIndex;
 import java.util.List;
 import java.util.UUID;
-import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
@@ -23,6 +22,8 @@ import org.bukkit.event.block.BlockPistonExtendEvent;
 import org.bukkit.event.block.BlockPistonRetractEvent;
 import org.bukkit.event.block.BlockPlaceEvent;
 import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 import org.bukkit.inventory.ItemStack;
 
 /**
@@ -37,25 +38,27 @@ public class BackpackBlockListener implements Listener {
      */
     @EventHandler(priority = EventPriority.HIGH, ignoreCancelled = true)
     public void onBlockPlace(BlockPlaceEvent event) {
-        ItemStack item = event.getItemInHand();
-
         // Check if placing a backpack
-        if (!BackpackItem.isBackpack(item)) {
+        BackpackData data = BackpackItem.read(event.getItemInHand());
+        if (data == null) {
             return;
         }
 
         Player player = event.getPlayer();
         Block block = event.getBlockPlaced();
 
-        @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
-        UUID backpackUUID = BackpackItem.getBackpackUUID(item);
-        BackpackTier tier = BackpackItem.getBackpackTier(item);
-
-        if (backpackUUID == null || tier == null) {
+        if (!data.isValid()) {
             player.sendMessage("§cError: Invalid backpack data!");
             event.setCancelled(true);
             return;
         }
+        @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
+        UUID backpackUUID = data.backpackUuid();
+        BackpackTier tier = data.tier();
+
+        // The placed block stores the binary format, move the rest of the stack over too.
+        // The item in hand is the live stack, so it is changed in place and not replaced.
+        BackpackItem.migrateLegacy(event.getItemInHand());
 
         // Ensure the block is a player head
         if (block.getType() != Material.PLAYER_HEAD
@@ -65,14 +68,10 @@ public class BackpackBlockListener implements Listener {
 
         // Set the skull texture and store backpack data
         if (block.getState() instanceof Skull skull) {
-            // Set the texture using Paper's profile API
-            String textureValue = tier.getTextureValue();
-            if (textureValue != null && !textureValue.startsWith("PLACEHOLDER")) {
+            // Set the texture using the same profile as the backpack item
+            if (BackpackItem.hasTexture(tier)) {
                 try {
-                    PlayerProfile profile = Bukkit.createProfile(backpackUUID);
-                    profile.getProperties().add(
-                        new ProfileProperty("textures", textureValue));
-                    skull.setPlayerProfile(profile);
+                    skull.setPlayerProfile(BackpackItem.createProfile(tier, backpackUUID));
                 } catch (Exception e) {
                     player.sendMessage("§cError: Failed to set backpack texture!");
                     event.setCancelled(true);
@@ -86,6 +85,7 @@ public class BackpackBlockListener implements Listener {
                 event.setCancelled(true);
                 return;
             }
+            BackpackChunkIndex.add(block);
 
             player.sendMessage("§7Backpack placed! §8(Right-click to open)");
         }
@@ -101,15 +101,8 @@ public class BackpackBlockListener implements Listener {
         Block block = event.getBlock();
 
         // Check if breaking a backpack block
-        if (!BackpackBlockUtil.isBackpackBlock(block)) {
-            return;
-        }
-
-        @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
-        UUID backpackUUID = BackpackBlockUtil.getBackpackUUIDFromBlock(block);
-        BackpackTier tier = BackpackBlockUtil.getBackpackTierFromBlock(block);
-
-        if (backpackUUID == null || tier == null) {
+        BackpackData data = BackpackBlockUtil.read(block);
+        if (data == null || !data.isValid()) {
             return;
         }
 
@@ -117,11 +110,26 @@ public class BackpackBlockListener implements Listener {
         event.setDropItems(false);
 
         // Create and drop the backpack item with preserved UUID
-        ItemStack backpackItem = BackpackItem.createBackpack(tier, backpackUUID);
+        ItemStack backpackItem = BackpackItem.createBackpack(data.tier(), data.backpackUuid());
         Location dropLocation = block.getLocation().add(0.5, 0.5, 0.5);
         block.getWorld().dropItemNaturally(dropLocation, backpackItem);
     }
 
+    /**
+     * Removes a broken backpack block from the chunk index.
+     * Runs after every other plugin had the chance to cancel the break. Blocks that are not
+     * backpacks return after a type check, so their chunk index is never built.
+     *
+     * @param event the block break event
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBackpackBroken(BlockBreakEvent event) {
+        Block block = event.getBlock();
+        if (BackpackBlockUtil.isBackpackBlock(block)) {
+            BackpackChunkIndex.remove(block);
+        }
+    }
+
     /**
      * Protects backpack blocks from entity explosions (Creeper, TNT, etc.).
      *
@@ -130,7 +138,7 @@ public class BackpackBlockListener implements Listener {
     @EventHandler(priority = EventPriority.HIGH, ignoreCancelled = true)
     public void onEntityExplode(EntityExplodeEvent event) {
         List<Block> blocks = event.blockList();
-        blocks.removeIf(BackpackBlockUtil::isBackpackBlock);
+        blocks.removeIf(BackpackChunkIndex::contains);
     }
 
     /**
@@ -141,7 +149,7 @@ public class BackpackBlockListener implements Listener {
     @EventHandler(priority = EventPriority.HIGH, ignoreCancelled = true)
     public void onBlockExplode(BlockExplodeEvent event) {
         List<Block> blocks = event.blockList();
-        blocks.removeIf(BackpackBlockUtil::isBackpackBlock);
+        blocks.removeIf(BackpackChunkIndex::contains);
     }
 
     /**
@@ -152,7 +160,7 @@ public class BackpackBlockListener implements Listener {
     @EventHandler(priority = EventPriority.HIGH, ignoreCancelled = true)
     public void onBlockBurn(BlockBurnEvent event) {
         Block block = event.getBlock();
-        if (BackpackBlockUtil.isBackpackBlock(block)) {
+        if (BackpackChunkIndex.contains(block)) {
             event.setCancelled(true);
         }
     }
@@ -165,7 +173,7 @@ public class BackpackBlockListener implements Listener {
     @EventHandler(priority = EventPriority.HIGH, ignoreCancelled = true)
     public void onPistonExtend(BlockPistonExtendEvent event) {
         for (Block block : event.getBlocks()) {
-            if (BackpackBlockUtil.isBackpackBlock(block)) {
+            if (BackpackChunkIndex.contains(block)) {
                 event.setCancelled(true);
                 return;
             }
@@ -180,10 +188,30 @@ public class BackpackBlockListener implements Listener {
     @EventHandler(priority = EventPriority.HIGH, ignoreCancelled = true)
     public void onPistonRetract(BlockPistonRetractEvent event) {
         for (Block block : event.getBlocks()) {
-            if (BackpackBlockUtil.isBackpackBlock(block)) {
+            if (BackpackChunkIndex.contains(block)) {
                 event.setCancelled(true);
                 return;
             }
         }
     }
+
+    /**
+     * Drops the backpack index of unloading chunks from memory.
+     *
+     * @param event the chunk unload event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        BackpackChunkIndex.unload(event.getChunk());
+    }
+
+    /**
+     * Drops the chunk index of an unloading world from memory.
+     *
+     * @param event the world unload event
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        BackpackChunkIndex.unload(event.getWorld());
+    }
 }
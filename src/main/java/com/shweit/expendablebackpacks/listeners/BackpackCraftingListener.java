@@ -1,21 +1,19 @@
 package com.shweit.expendablebackpacks.listeners;
 
+import com.shweit.expendablebackpacks.items.BackpackData;
 import com.shweit.expendablebackpacks.items.BackpackItem;
 import com.shweit.expendablebackpacks.items.BackpackTier;
-import com.shweit.expendablebackpacks.storage.BackpackManager;
-import java.util.UUID;
-import org.bukkit.Bukkit;
+import com.shweit.expendablebackpacks.recipes.BackpackRecipeTable;
 import org.bukkit.Material;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
-import org.bukkit.event.inventory.ClickType;
+import org.bukkit.event.block.CrafterCraftEvent;
 import org.bukkit.event.inventory.CraftItemEvent;
 import org.bukkit.event.inventory.PrepareItemCraftEvent;
 import org.bukkit.inventory.CraftingInventory;
 import org.bukkit.inventory.ItemStack;
-import org.bukkit.plugin.Plugin;
 
 /**
  * Handles all backpack crafting logic.
@@ -23,21 +21,6 @@ import org.bukkit.plugin.Plugin;
  */
 public class BackpackCraftingListener implements Listener {
 
-    private final BackpackManager backpackManager;
-    private final Plugin plugin;
-
-    /**
-     * Creates a new backpack crafting listener.
-     *
-     * @param backpackManager the backpack manager instance
-     * @param plugin the plugin instance
-     */
-    @SuppressWarnings("EI_EXPOSE_REP2")
-    public BackpackCraftingListener(BackpackManager backpackManager, Plugin plugin) {
-        this.backpackManager = backpackManager;
-        this.plugin = plugin;
-    }
-
     /**
      * Handles the crafting preparation event for backpacks.
      *
@@ -50,7 +33,7 @@ public class BackpackCraftingListener implements Listener {
 
         // Check for Enderpack cloning (1 Enderpack + 1 Pearl = 2 Enderpacks with same UUID)
         // This is a shapeless recipe, works in any crafting grid
-        ItemStack enderpack = null;
+        BackpackData enderpack = null;
         boolean hasEnderPearl = false;
         int totalItems = 0;
 
@@ -61,10 +44,10 @@ public class BackpackCraftingListener implements Listener {
             }
             totalItems++;
 
-            if (BackpackItem.isBackpack(item)) {
-                BackpackTier tier = BackpackItem.getBackpackTier(item);
-                if (tier == BackpackTier.ENDERPACK && item.getAmount() == 1) {
-                    enderpack = item;
+            BackpackData data = BackpackItem.read(item);
+            if (data != null) {
+                if (data.tier() == BackpackTier.ENDERPACK && item.getAmount() == 1) {
+                    enderpack = data;
                 } else {
                     enderpack = null;
                     break;
@@ -79,8 +62,9 @@ public class BackpackCraftingListener implements Listener {
 
         // If valid clone pattern: 1 Enderpack + 1 Pearl = 2 Enderpacks (same UUID)
         if (enderpack != null && hasEnderPearl && totalItems == 2) {
-            ItemStack clonedEnderpack = BackpackItem.cloneBackpack(enderpack);
-            if (clonedEnderpack != null) {
+            if (enderpack.isValid()) {
+                ItemStack clonedEnderpack = BackpackItem.createBackpack(
+                    enderpack.tier(), enderpack.backpackUuid());
                 clonedEnderpack.setAmount(2);
                 inv.setResult(clonedEnderpack);
             }
@@ -92,97 +76,132 @@ public class BackpackCraftingListener implements Listener {
             return; // Not a 3x3 crafting grid
         }
 
-        // Check for Leather Backpack crafting (new Leather Backpack with new UUID)
-        if (isLeatherBackpackPattern(matrix)) {
-            inv.setResult(BackpackItem.createBackpack(BackpackTier.LEATHER));
+        ItemStack centerItem = matrix[4];
+        if (centerItem == null) {
             return;
         }
 
-        // Check for Enderpack crafting (new Enderpack)
-        if (isEnderpackPattern(matrix)) {
-            inv.setResult(BackpackItem.createBackpack(BackpackTier.ENDERPACK));
+        // New backpacks are crafted around a chest (UUID is assigned when the craft happens)
+        if (centerItem.getType() == Material.CHEST) {
+            BackpackRecipeTable.Craft craft = BackpackRecipeTable.matchCraft(matrix);
+            if (craft != null) {
+                inv.setResult(BackpackItem.createPreview(craft.result()));
+            }
             return;
         }
 
         // Check for upgrade patterns (center must be a backpack)
-        ItemStack center = matrix[4];
-        if (!BackpackItem.isBackpack(center)) {
-            return; // Not an upgrade
-        }
-
-        BackpackTier currentTier = BackpackItem.getBackpackTier(center);
-        if (currentTier == null) {
+        if (centerItem.getType() != Material.PLAYER_HEAD) {
             return;
         }
-
-        // Check if center is surrounded by upgrade material
         Material surrounding = getSurroundingMaterial(matrix);
         if (surrounding == null) {
             return;
         }
 
-        // Determine target tier based on surrounding material
-        BackpackTier targetTier = null;
-
-        if (surrounding == Material.DIRT && currentTier == BackpackTier.LEATHER) {
-            targetTier = BackpackTier.DIRT;
-        } else if (surrounding == Material.COPPER_INGOT && currentTier == BackpackTier.LEATHER) {
-            targetTier = BackpackTier.COPPER;
-        } else if (surrounding == Material.IRON_INGOT && currentTier == BackpackTier.COPPER) {
-            targetTier = BackpackTier.IRON;
-        } else if (surrounding == Material.GOLD_INGOT && currentTier == BackpackTier.IRON) {
-            targetTier = BackpackTier.GOLD;
-        } else if (surrounding == Material.DIAMOND && currentTier == BackpackTier.GOLD) {
-            targetTier = BackpackTier.DIAMOND;
+        BackpackData center = BackpackItem.read(centerItem);
+        if (center == null || center.tier() == null || center.backpackUuid() == null) {
+            return; // Not an upgrade
         }
 
-        if (targetTier != null) {
+        BackpackRecipeTable.Upgrade upgrade =
+            BackpackRecipeTable.matchUpgrade(center.tier(), surrounding);
+        if (upgrade != null) {
             // Upgrade preserves UUID (same inventory)
-            ItemStack upgraded = BackpackItem.upgradeBackpack(center, targetTier);
+            ItemStack upgraded = BackpackItem.createBackpack(upgrade.result(), center.backpackUuid());
             inv.setResult(upgraded);
         }
     }
 
     /**
-     * Check if the pattern matches Leather Backpack crafting.
-     * L S L
-     * L C L
-     * L L L
+     * Replaces the crafting preview with a real backpack when the craft happens,
+     * so a new UUID is only generated for backpacks that are actually taken.
      *
-     * @param matrix the crafting matrix
-     * @return true if the pattern matches
+     * @param event the craft item event
      */
-    private boolean isLeatherBackpackPattern(ItemStack[] matrix) {
-        return isMaterial(matrix[0], Material.LEATHER)
-               && isMaterial(matrix[1], Material.STRING)
-               && isMaterial(matrix[2], Material.LEATHER)
-               && isMaterial(matrix[3], Material.LEATHER)
-               && isMaterial(matrix[4], Material.CHEST)
-               && isMaterial(matrix[5], Material.LEATHER)
-               && isMaterial(matrix[6], Material.LEATHER)
-               && isMaterial(matrix[7], Material.LEATHER)
-               && isMaterial(matrix[8], Material.LEATHER);
+    @EventHandler(priority = EventPriority.HIGH, ignoreCancelled = true)
+    public void onCraftItem(CraftItemEvent event) {
+        BackpackTier tier = BackpackItem.getPreviewTier(event.getCurrentItem());
+        if (tier == null) {
+            return;
+        }
+
+        if (event.isShiftClick() && event.getWhoClicked() instanceof Player player) {
+            // Vanilla would hand out copies of one result, craft each backpack separately
+            event.setCancelled(true);
+            craftAll(player, event.getInventory(), tier);
+            return;
+        }
+
+        event.setCurrentItem(BackpackItem.createBackpack(tier));
     }
 
     /**
-     * Check if the pattern matches Enderpack crafting.
-     * E P E
-     * P C P
-     * E I E
+     * Replaces the crafting preview with a real backpack when a crafter block crafts it.
+     * Crafters use the registered recipes directly, whose result is the preview. Upgrade
+     * and clone recipes only accept preview backpacks as ingredients, which carry no UUID,
+     * so every backpack made by a crafter gets a new UUID.
      *
-     * @param matrix the crafting matrix
-     * @return true if the pattern matches
+     * @param event the crafter craft event
+     */
+    @EventHandler(priority = EventPriority.HIGH, ignoreCancelled = true)
+    public void onCrafterCraft(CrafterCraftEvent event) {
+        ItemStack preview = event.getResult();
+        BackpackTier tier = BackpackItem.getPreviewTier(preview);
+        if (tier == null) {
+            return;
+        }
+
+        // Copies made in one craft share their UUID, as the Enderpack clone recipe does
+        ItemStack backpack = BackpackItem.createBackpack(tier);
+        backpack.setAmount(preview.getAmount());
+        event.setResult(backpack);
+    }
+
+    /**
+     * Craft as many backpacks as the grid and the player's inventory allow,
+     * each with its own UUID.
+     *
+     * @param player the crafting player
+     * @param inv the crafting inventory
+     * @param tier the tier being crafted
      */
-    private boolean isEnderpackPattern(ItemStack[] matrix) {
-        return isMaterial(matrix[0], Material.ENDER_EYE)
-               && isMaterial(matrix[1], Material.ENDER_PEARL)
-               && isMaterial(matrix[2], Material.ENDER_EYE)
-               && isMaterial(matrix[3], Material.ENDER_PEARL)
-               && isMaterial(matrix[4], Material.CHEST)
-               && isMaterial(matrix[5], Material.ENDER_PEARL)
-               && isMaterial(matrix[6], Material.ENDER_EYE)
-               && isMaterial(matrix[7], Material.IRON_BLOCK)
-               && isMaterial(matrix[8], Material.ENDER_EYE);
+    private void craftAll(Player player, CraftingInventory inv, BackpackTier tier) {
+        ItemStack[] matrix = inv.getMatrix();
+        int crafts = Integer.MAX_VALUE;
+        for (ItemStack item : matrix) {
+            if (item != null && item.getType() != Material.AIR) {
+                crafts = Math.min(crafts, item.getAmount());
+            }
+        }
+
+        int crafted = 0;
+        while (crafted < crafts) {
+            ItemStack backpack = BackpackItem.createBackpack(tier);
+            if (!player.getInventory().addItem(backpack).isEmpty()) {
+                break; // Inventory is full
+            }
+            crafted++;
+        }
+        if (crafted == 0) {
+            return;
+        }
+
+        for (int i = 0; i < matrix.length; i++) {
+            ItemStack item = matrix[i];
+            if (item == null || item.getType() == Material.AIR) {
+                continue;
+            }
+            if (item.getAmount() > crafted) {
+                item.setAmount(item.getAmount() - crafted);
+            } else {
+                matrix[i] = null;
+            }
+        }
+        inv.setMatrix(matrix);
+        if (crafted == crafts) {
+            inv.setResult(null);
+        }
     }
 
     /**
@@ -215,15 +234,4 @@ public class BackpackCraftingListener implements Listener {
 
         return material;
     }
-
-    /**
-     * Check if item is of given material (ignores amount for stacking support).
-     *
-     * @param item the item stack to check
-     * @param material the material to compare against
-     * @return true if the item is of the given material
-     */
-    private boolean isMaterial(ItemStack item, Material material) {
-        return item != null && item.getType() == material;
-    }
 }
@@ -1,24 +1,34 @@
 package com.shweit.expendablebackpacks.listeners;
 
+import com.shweit.expendablebackpacks.items.BackpackData;
 import com.shweit.expendablebackpacks.items.BackpackItem;
 import com.shweit.expendablebackpacks.items.BackpackTier;
+import com.shweit.expendablebackpacks.storage.BackpackHolder;
 import com.shweit.expendablebackpacks.storage.BackpackManager;
 import com.shweit.expendablebackpacks.util.BackpackBlockUtil;
+import com.shweit.expendablebackpacks.util.BackpackScheduler;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import org.bukkit.block.Block;
+import org.bukkit.entity.Item;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.Action;
+import org.bukkit.event.entity.EntityPickupItemEvent;
 import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.event.inventory.InventoryCloseEvent;
 import org.bukkit.event.inventory.InventoryDragEvent;
+import org.bukkit.event.inventory.InventoryOpenEvent;
 import org.bukkit.event.player.PlayerAnimationEvent;
 import org.bukkit.event.player.PlayerAnimationType;
 import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
 
 /**
  * Handles backpack opening and closing.
@@ -26,15 +36,18 @@ import org.bukkit.inventory.ItemStack;
 public class BackpackInteractionListener implements Listener {
 
     private final BackpackManager backpackManager;
+    private final BackpackScheduler scheduler;
 
     /**
      * Creates a new backpack interaction listener.
      *
      * @param backpackManager the backpack manager instance
+     * @param scheduler the scheduler used to open backpacks once they are loaded
      */
     @SuppressWarnings("EI_EXPOSE_REP2")
-    public BackpackInteractionListener(BackpackManager backpackManager) {
+    public BackpackInteractionListener(BackpackManager backpackManager, BackpackScheduler scheduler) {
         this.backpackManager = backpackManager;
+        this.scheduler = scheduler;
     }
 
     /**
@@ -80,16 +93,17 @@ public class BackpackInteractionListener implements Listener {
         // Check if right-clicking on a backpack block
         if (event.getAction() == Action.RIGHT_CLICK_BLOCK) {
             Block clickedBlock = event.getClickedBlock();
-            if (BackpackBlockUtil.isBackpackBlock(clickedBlock)) {
+            BackpackData blockData = BackpackBlockUtil.read(clickedBlock);
+            if (blockData != null) {
                 event.setCancelled(true);
-                openBackpackBlock(player, clickedBlock);
+                openBackpackBlock(player, blockData);
                 return;
             }
         }
 
         // Handle backpack items
-        ItemStack item = event.getItem();
-        if (!BackpackItem.isBackpack(item)) {
+        BackpackData data = BackpackItem.read(event.getItem());
+        if (data == null) {
             return;
         }
 
@@ -101,50 +115,74 @@ public class BackpackInteractionListener implements Listener {
         // Otherwise, open the backpack inventory
         event.setCancelled(true);
 
-        @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
-        UUID backpackUUID = BackpackItem.getBackpackUUID(item);
-        BackpackTier tier = BackpackItem.getBackpackTier(item);
-
-        if (backpackUUID == null || tier == null) {
+        if (!data.isValid()) {
             player.sendMessage("§cError: Invalid backpack data!");
             return;
         }
+        @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
+        UUID backpackUUID = data.backpackUuid();
+        BackpackTier tier = data.tier();
 
-        // Get or create inventory
-        String title = tier.getDisplayName();
-        Inventory inventory = backpackManager.getInventory(
-            backpackUUID, title, tier.getSlots());
-
-        // Open for player
-        player.openInventory(inventory);
-
-        // Send message for Enderpacks
-        if (tier.isEnderpack()) {
-            player.sendMessage(
-                "§5§lEnderpack §7opened! All Enderpacks with this ID share storage.");
+        // Move backpacks from before the binary UUID format over while they are in hand
+        if (event.getHand() != null) {
+            BackpackItem.migrateLegacy(player.getInventory().getItem(event.getHand()));
         }
+
+        openBackpack(player, backpackUUID, tier);
     }
 
     /**
      * Opens a placed backpack block for a player.
      *
      * @param player the player opening the backpack
-     * @param block the backpack block
+     * @param data the data read from the backpack block
      */
-    private void openBackpackBlock(Player player, Block block) {
+    private void openBackpackBlock(Player player, BackpackData data) {
+        if (!data.isValid()) {
+            player.sendMessage("§cError: Invalid backpack block data!");
+            return;
+        }
         @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
-        UUID backpackUUID = BackpackBlockUtil.getBackpackUUIDFromBlock(block);
-        BackpackTier tier = BackpackBlockUtil.getBackpackTierFromBlock(block);
+        UUID backpackUUID = data.backpackUuid();
+        BackpackTier tier = data.tier();
 
-        if (backpackUUID == null || tier == null) {
-            player.sendMessage("§cError: Invalid backpack block data!");
+        openBackpack(player, backpackUUID, tier);
+    }
+
+    /**
+     * Opens a backpack once its contents are loaded.
+     * A backpack that is not cached yet is read off the server threads first and opened on
+     * the player's thread afterwards.
+     *
+     * @param player the player opening the backpack
+     * @param backpackUuid the backpack UUID
+     * @param tier the backpack tier
+     */
+    private void openBackpack(Player player, UUID backpackUuid, BackpackTier tier) {
+        CompletableFuture<Void> loaded = backpackManager.whenLoaded(backpackUuid);
+        if (loaded.isDone()) {
+            showBackpack(player, backpackUuid, tier);
             return;
         }
+        loaded.whenComplete((ignored, error) ->
+            scheduler.runTask(() -> showBackpack(player, backpackUuid, tier), player));
+    }
 
+    /**
+     * Shows a loaded backpack to a player.
+     *
+     * @param player the player opening the backpack
+     * @param backpackUuid the backpack UUID
+     * @param tier the backpack tier
+     */
+    private void showBackpack(Player player, UUID backpackUuid, BackpackTier tier) {
         // Get or create inventory
-        String title = tier.getDisplayName();
-        Inventory inventory = backpackManager.getInventory(
-            backpackUUID, title, tier.getSlots());
+        Inventory inventory = backpackManager.getInventory(backpackUuid, tier);
+        if (inventory == null) {
+            player.sendMessage("§cThis backpack could not be loaded! Its contents are kept, "
+                + "please tell an admin.");
+            return;
+        }
 
         // Open for player
         player.openInventory(inventory);
@@ -156,6 +194,16 @@ public class BackpackInteractionListener implements Listener {
         }
     }
 
+    /**
+     * Resolves the backpack of a view once when it opens.
+     *
+     * @param event the inventory open event
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryOpen(InventoryOpenEvent event) {
+        backpackManager.trackView(event.getPlayer(), event.getView().getTopInventory());
+    }
+
     /**
      * Handles inventory close events for backpacks.
      *
@@ -163,78 +211,119 @@ public class BackpackInteractionListener implements Listener {
      */
     @EventHandler
     public void onInventoryClose(InventoryCloseEvent event) {
-        Inventory inv = event.getInventory();
-        String title = event.getView().getTitle();
-
-        // Check if it's a backpack inventory
-        boolean isBackpack = false;
-        for (BackpackTier tier : BackpackTier.values()) {
-            if (title.equals(tier.getDisplayName())) {
-                isBackpack = true;
-                break;
+        BackpackHolder holder = backpackManager.untrackView(event.getPlayer());
+        if (holder == null) {
+            return;
+        }
+
+        // Pending changes are written when the backpack is closed
+        backpackManager.flushView(holder);
+    }
+
+    /**
+     * Starts loading the backpacks a joining player carries, so opening them does not
+     * wait for the disk. After a restart many players join at once and their loads overlap.
+     * Backpacks still using the legacy UUID format are migrated in the same pass.
+     *
+     * @param event the player join event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        PlayerInventory inventory = event.getPlayer().getInventory();
+        for (int slot = 0; slot < inventory.getSize(); slot++) {
+            ItemStack item = inventory.getItem(slot);
+            BackpackData data = BackpackItem.read(item);
+            if (data == null || !data.isValid()) {
+                continue;
+            }
+            if (BackpackItem.migrateLegacy(item)) {
+                inventory.setItem(slot, item);
             }
+            backpackManager.prefetch(data.backpackUuid());
         }
+    }
 
-        if (!isBackpack) {
+    /**
+     * Migrates legacy backpacks a player clicks on, before the click moves them.
+     * Only clicks in the player's own inventory or an open backpack are looked at, legacy
+     * backpacks in other containers are migrated once they reach one of those.
+     *
+     * @param event the inventory click event
+     */
+    @EventHandler(priority = EventPriority.LOW, ignoreCancelled = true)
+    public void onLegacyBackpackClick(InventoryClickEvent event) {
+        if (!(event.getClickedInventory() instanceof PlayerInventory)
+            && backpackManager.getOpenBackpack(event.getWhoClicked()) == null) {
             return;
         }
+        ItemStack current = event.getCurrentItem();
+        if (BackpackItem.migrateLegacy(current)) {
+            event.setCurrentItem(current);
+        }
+        ItemStack cursor = event.getWhoClicked().getItemOnCursor();
+        if (BackpackItem.migrateLegacy(cursor)) {
+            event.getWhoClicked().setItemOnCursor(cursor);
+        }
+    }
 
-        // Find the backpack UUID from the player's inventory or the inventory holder
-        // We need to save the inventory when closed
-        // For simplicity, we'll search through loaded inventories
-        @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
-        UUID backpackUUID = findBackpackUUID(inv);
-        if (backpackUUID != null) {
-            backpackManager.saveInventory(backpackUUID, inv);
+    /**
+     * Migrates legacy backpacks when they are picked up from the ground.
+     *
+     * @param event the entity pickup item event
+     */
+    @EventHandler(priority = EventPriority.LOW, ignoreCancelled = true)
+    public void onLegacyBackpackPickup(EntityPickupItemEvent event) {
+        Item item = event.getItem();
+        ItemStack stack = item.getItemStack();
+        if (BackpackItem.migrateLegacy(stack)) {
+            item.setItemStack(stack);
+        }
+    }
+
+    /**
+     * Drops the cached view of a player that left while a backpack was open.
+     * The backpack is written while still on the player's thread, unless it is shared.
+     *
+     * @param event the player quit event
+     */
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        BackpackHolder holder = backpackManager.untrackView(event.getPlayer());
+        if (holder != null) {
+            backpackManager.flushView(holder);
         }
     }
 
     /**
-     * Handles inventory click events for backpacks to auto-save on changes.
+     * Handles inventory click events for backpacks to mark them for saving.
      *
      * @param event the inventory click event
      */
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
     public void onInventoryClick(InventoryClickEvent event) {
-        Inventory clickedInventory = event.getClickedInventory();
-        if (clickedInventory == null) {
+        if (event.getClickedInventory() == null) {
             return;
         }
 
-        @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
-        UUID backpackUUID = findBackpackUUID(clickedInventory);
-        if (backpackUUID != null) {
-            // Save inventory after the click is processed
-            backpackManager.saveInventory(backpackUUID, clickedInventory);
+        // Shift-clicks from the player inventory change the backpack at the top as well
+        BackpackHolder holder = backpackManager.getOpenBackpack(event.getWhoClicked());
+        if (holder != null) {
+            // Written with the next flush
+            backpackManager.markDirty(holder.getBackpackUuid());
         }
     }
 
     /**
-     * Handles inventory drag events for backpacks to auto-save on changes.
+     * Handles inventory drag events for backpacks to mark them for saving.
      *
      * @param event the inventory drag event
      */
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
     public void onInventoryDrag(InventoryDragEvent event) {
-        Inventory inventory = event.getInventory();
-
-        @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
-        UUID backpackUUID = findBackpackUUID(inventory);
-        if (backpackUUID != null) {
-            // Save inventory after the drag is processed
-            backpackManager.saveInventory(backpackUUID, inventory);
+        BackpackHolder holder = backpackManager.getOpenBackpack(event.getWhoClicked());
+        if (holder != null) {
+            // Written with the next flush
+            backpackManager.markDirty(holder.getBackpackUuid());
         }
     }
-
-    /**
-     * Find the UUID of a backpack inventory by comparing instances.
-     *
-     * @param inventory the inventory to find
-     * @return the UUID or null
-     */
-    @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
-    private UUID findBackpackUUID(Inventory inventory) {
-        // Check all loaded inventories in the BackpackManager
-        return backpackManager.findInventoryUUID(inventory);
-    }
 }
@@ -1,7 +1,7 @@
 package com.shweit.expendablebackpacks.listeners;
 
 import com.shweit.expendablebackpacks.items.BackpackItem;
-import com.shweit.expendablebackpacks.items.BackpackTier;
+import com.shweit.expendablebackpacks.storage.BackpackManager;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.inventory.ClickType;
@@ -15,6 +15,18 @@ import org.bukkit.inventory.ItemStack;
  */
 public class BackpackProtectionListener implements Listener {
 
+    private final BackpackManager backpackManager;
+
+    /**
+     * Creates a new backpack protection listener.
+     *
+     * @param backpackManager the backpack manager instance
+     */
+    @SuppressWarnings("EI_EXPOSE_REP2")
+    public BackpackProtectionListener(BackpackManager backpackManager) {
+        this.backpackManager = backpackManager;
+    }
+
     /**
      * Handles inventory click events to prevent backpack inception.
      *
@@ -31,9 +43,8 @@ public class BackpackProtectionListener implements Listener {
         ItemStack cursor = event.getCursor();
         ItemStack current = event.getCurrentItem();
 
-        // Check if top inventory is a backpack by checking the title
-        String title = event.getView().getTitle();
-        boolean topIsBackpack = isBackpackTitle(title);
+        // Check if top inventory is a backpack, resolved once when the view was opened
+        boolean topIsBackpack = backpackManager.getOpenBackpack(event.getWhoClicked()) != null;
 
         // Prevent placing backpacks with cursor into backpack inventories
         if (topIsBackpack && clickedInventory == topInventory) {
@@ -76,9 +87,8 @@ public class BackpackProtectionListener implements Listener {
      */
     @EventHandler
     public void onInventoryDrag(InventoryDragEvent event) {
-        // Check if dragging into a backpack inventory by title
-        String title = event.getView().getTitle();
-        if (!isBackpackTitle(title)) {
+        // Check if dragging into a backpack inventory
+        if (backpackManager.getOpenBackpack(event.getWhoClicked()) == null) {
             return;
         }
 
@@ -89,26 +99,4 @@ public class BackpackProtectionListener implements Listener {
                 "§cYou cannot put a backpack inside another backpack!");
         }
     }
-
-    /**
-     * Check if a title matches a backpack inventory title.
-     * Backpack titles contain the tier display name (e.g., "Enderpack", "Diamond Backpack").
-     *
-     * @param title the title to check
-     * @return true if the title matches a backpack inventory
-     */
-    private boolean isBackpackTitle(String title) {
-        if (title == null) {
-            return false;
-        }
-
-        // Check if title contains any backpack tier name
-        for (BackpackTier tier : BackpackTier.values()) {
-            if (title.contains(tier.getDisplayName())) {
-                return true;
-            }
-        }
-
-        return false;
-    }
 }
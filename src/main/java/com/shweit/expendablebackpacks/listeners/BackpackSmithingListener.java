@@ -1,5 +1,6 @@
 package com.shweit.expendablebackpacks.listeners;
 
+import com.shweit.expendablebackpacks.items.BackpackData;
 import com.shweit.expendablebackpacks.items.BackpackItem;
 import com.shweit.expendablebackpacks.items.BackpackTier;
 import com.shweit.expendablebackpacks.storage.BackpackManager;
@@ -43,11 +44,12 @@ public class BackpackSmithingListener implements Listener {
         ItemStack base = inv.getItem(1);      // Base item slot
 
         // Check if we're upgrading a backpack
-        if (!BackpackItem.isBackpack(base)) {
+        BackpackData data = BackpackItem.read(base);
+        if (data == null || data.backpackUuid() == null) {
             return;
         }
 
-        BackpackTier currentTier = BackpackItem.getBackpackTier(base);
+        BackpackTier currentTier = data.tier();
         if (currentTier == null || currentTier != BackpackTier.DIAMOND) {
             return; // Only Diamond backpacks can be upgraded to Netherite
         }
@@ -64,7 +66,7 @@ public class BackpackSmithingListener implements Listener {
         }
 
         // Create Netherite upgrade (preserves UUID and inventory)
-        ItemStack upgraded = BackpackItem.upgradeBackpack(base, BackpackTier.NETHERITE);
+        ItemStack upgraded = BackpackItem.createBackpack(BackpackTier.NETHERITE, data.backpackUuid());
         event.setResult(upgraded);
     }
 }
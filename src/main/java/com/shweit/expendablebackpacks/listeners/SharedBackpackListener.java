@@ -0,0 +1,230 @@
+package com.shweit.expendablebackpacks.listeners;
+
+import com.shweit.expendablebackpacks.storage.BackpackHolder;
+import com.shweit.expendablebackpacks.storage.BackpackManager;
+import com.shweit.expendablebackpacks.util.BackpackScheduler;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.inventory.InventoryAction;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryDragEvent;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Routes clicks on shared backpacks through their mailbox on Folia.
+ * An Enderpack may be open in several regions that tick in parallel, so viewers never edit
+ * its inventory directly. A click is cancelled and sent to the backpack's mailbox as a
+ * take, put or swap message, and the result is handed back to the player on their own
+ * region thread. Items are always removed from one side before they are given to the
+ * other, so a lost race can never duplicate them.
+ *
+ * <p>Pickup, place, swap and shift-clicks are supported. Other actions that would touch a
+ * shared backpack (dragging, hotbar keys, collecting to the cursor) are cancelled.
+ */
+public class SharedBackpackListener implements Listener {
+
+    private final BackpackManager backpackManager;
+    private final BackpackScheduler scheduler;
+
+    /**
+     * Creates a new shared backpack listener.
+     *
+     * @param backpackManager the backpack manager
+     * @param scheduler the scheduler used to reply to players
+     */
+    @SuppressWarnings("EI_EXPOSE_REP2")
+    public SharedBackpackListener(BackpackManager backpackManager, BackpackScheduler scheduler) {
+        this.backpackManager = backpackManager;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Turns clicks on a shared backpack into mailbox messages.
+     *
+     * @param event the inventory click event
+     */
+    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+    public void onInventoryClick(InventoryClickEvent event) {
+        if (!(event.getWhoClicked() instanceof Player player)) {
+            return;
+        }
+        BackpackHolder holder = backpackManager.getOpenBackpack(player);
+        if (holder == null || !backpackManager.isShared(holder)) {
+            return;
+        }
+
+        boolean inBackpack = event.getRawSlot() >= 0
+            && event.getRawSlot() < event.getView().getTopInventory().getSize();
+        int slot = event.getSlot();
+        ItemStack current = event.getCurrentItem();
+        ItemStack cursor = event.getCursor();
+
+        switch (event.getAction()) {
+            case PICKUP_ALL, PICKUP_HALF, PICKUP_ONE, PICKUP_SOME -> {
+                if (!inBackpack || current == null) {
+                    return;
+                }
+                event.setCancelled(true);
+                int amount = switch (event.getAction()) {
+                    case PICKUP_HALF -> (current.getAmount() + 1) / 2;
+                    case PICKUP_ONE -> 1;
+                    case PICKUP_SOME -> cursor == null ? current.getAmount()
+                        : cursor.getMaxStackSize() - cursor.getAmount();
+                    default -> current.getAmount();
+                };
+                reply(player, holder, backpackManager.take(holder, slot, current.clone(), amount),
+                    true);
+            }
+            case PLACE_ALL, PLACE_ONE, PLACE_SOME -> {
+                if (!inBackpack || cursor == null) {
+                    return;
+                }
+                event.setCancelled(true);
+                int amount = switch (event.getAction()) {
+                    case PLACE_ONE -> 1;
+                    case PLACE_SOME -> current == null ? cursor.getAmount()
+                        : Math.min(cursor.getAmount(), current.getMaxStackSize() - current.getAmount());
+                    default -> cursor.getAmount();
+                };
+                ItemStack placed = cursor.clone();
+                placed.setAmount(amount);
+                ItemStack rest = cursor.clone();
+                rest.setAmount(cursor.getAmount() - amount);
+                player.setItemOnCursor(rest.getAmount() > 0 ? rest : null);
+                reply(player, holder, backpackManager.put(holder, slot, placed), true);
+            }
+            case SWAP_WITH_CURSOR -> {
+                if (!inBackpack || cursor == null) {
+                    return;
+                }
+                event.setCancelled(true);
+                ItemStack swapped = cursor.clone();
+                player.setItemOnCursor(null);
+                reply(player, holder, backpackManager.swap(holder, slot,
+                    current == null ? null : current.clone(), swapped), true);
+            }
+            case MOVE_TO_OTHER_INVENTORY -> {
+                if (current == null) {
+                    return;
+                }
+                event.setCancelled(true);
+                if (inBackpack) {
+                    reply(player, holder, backpackManager.take(holder, slot, current.clone(),
+                        current.getAmount()), false);
+                } else {
+                    ItemStack moved = current.clone();
+                    event.getClickedInventory().setItem(slot, null);
+                    reply(player, holder, backpackManager.put(holder, -1, moved), false);
+                }
+            }
+            case NOTHING -> {
+            }
+            default -> {
+                // Anything else that reaches into the backpack cannot be expressed as a message
+                if (inBackpack || event.getAction() == InventoryAction.COLLECT_TO_CURSOR) {
+                    event.setCancelled(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Blocks dragging items across a shared backpack.
+     *
+     * @param event the inventory drag event
+     */
+    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+    public void onInventoryDrag(InventoryDragEvent event) {
+        BackpackHolder holder = backpackManager.getOpenBackpack(event.getWhoClicked());
+        if (holder == null || !backpackManager.isShared(holder)) {
+            return;
+        }
+        int topSize = event.getView().getTopInventory().getSize();
+        for (int rawSlot : event.getRawSlots()) {
+            if (rawSlot < topSize) {
+                event.setCancelled(true);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Hand the result of a mailbox message back to the player on their region thread.
+     *
+     * @param player the player
+     * @param holder the holder of the backpack
+     * @param result the items the player receives, null for none
+     * @param toCursor true to prefer the cursor, false to prefer the player inventory
+     */
+    private void reply(Player player, BackpackHolder holder, CompletableFuture<ItemStack> result,
+                       boolean toCursor) {
+        // Read on the player's thread, the reply may come back after they left
+        Location lastLocation = player.getLocation();
+        result.whenComplete((item, error) -> {
+            if (error != null) {
+                scheduler.getOwningPlugin().getLogger().log(Level.SEVERE,
+                    "Could not update shared backpack " + holder.getBackpackUuid() + "!", error);
+                return;
+            }
+            if (item == null || item.getAmount() <= 0) {
+                return;
+            }
+            // A player who left meanwhile gets the items put back into the backpack
+            scheduler.runTask(() -> give(player, item, toCursor), player,
+                () -> putBack(holder, item, lastLocation));
+        });
+    }
+
+    /**
+     * Put items of a player who left back into a shared backpack.
+     * Whatever no longer fits is dropped where the player was last seen.
+     *
+     * @param holder the holder of the backpack
+     * @param item the items
+     * @param location the last known location of the player
+     */
+    private void putBack(BackpackHolder holder, ItemStack item, Location location) {
+        backpackManager.put(holder, -1, item).whenComplete((leftover, error) -> {
+            if (error != null) {
+                scheduler.getOwningPlugin().getLogger().log(Level.SEVERE,
+                    "Could not put items back into shared backpack "
+                        + holder.getBackpackUuid() + "!", error);
+            }
+            ItemStack dropped = error != null ? item : leftover;
+            if (dropped == null || dropped.getAmount() <= 0) {
+                return;
+            }
+            scheduler.runTask(() -> location.getWorld().dropItemNaturally(location, dropped),
+                location);
+        });
+    }
+
+    /**
+     * Give items to a player, falling back to the player inventory and then the ground.
+     *
+     * @param player the player
+     * @param item the items
+     * @param toCursor true to prefer the cursor
+     */
+    private void give(Player player, ItemStack item, boolean toCursor) {
+        ItemStack cursor = player.getItemOnCursor();
+        if (toCursor && cursor.getType().isAir()) {
+            player.setItemOnCursor(item);
+            return;
+        }
+        if (toCursor && cursor.isSimilar(item)
+            && cursor.getAmount() + item.getAmount() <= cursor.getMaxStackSize()) {
+            cursor.setAmount(cursor.getAmount() + item.getAmount());
+            player.setItemOnCursor(cursor);
+            return;
+        }
+        for (ItemStack leftover : player.getInventory().addItem(item).values()) {
+            player.getWorld().dropItemNaturally(player.getLocation(), leftover);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.shweit.expendablebackpacks.recipes;
+
+import com.shweit.expendablebackpacks.items.BackpackTier;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Every 3x3 backpack recipe in one place. The crafting listener, the recipe registration
+ * and the guide GUI all read from this table, so a recipe only has to be changed here.
+ *
+ * <p>Crafting a new backpack uses a fixed pattern around a chest and is indexed by the
+ * material in the top-left corner. Upgrades surround a backpack with eight of the same
+ * material and are indexed by the current tier and that material. Both lookups are
+ * a single map access plus at most nine material comparisons.
+ */
+public final class BackpackRecipeTable {
+
+    /**
+     * Recipe crafting a new backpack from a fixed pattern.
+     *
+     * @param key the recipe key
+     * @param result the crafted tier
+     * @param pattern the materials of the nine grid slots, row by row
+     */
+    public record Craft(String key, BackpackTier result, Material[] pattern) {
+
+        /**
+         * Check if a crafting matrix matches this pattern (amounts are ignored).
+         *
+         * @param matrix the 3x3 crafting matrix
+         * @return true if every slot matches
+         */
+        boolean matches(ItemStack[] matrix) {
+            for (int i = 0; i < pattern.length; i++) {
+                ItemStack item = matrix[i];
+                if (item == null || item.getType() != pattern[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Recipe upgrading a backpack surrounded by eight of the same material.
+     * The UUID, and with it the inventory, is kept.
+     *
+     * @param key the recipe key
+     * @param base the tier placed in the center
+     * @param material the surrounding material
+     * @param result the resulting tier
+     */
+    public record Upgrade(String key, BackpackTier base, Material material, BackpackTier result) {
+    }
+
+    private static final List<Craft> CRAFTS = List.of(
+        new Craft("leather_backpack", BackpackTier.LEATHER, new Material[] {
+            Material.LEATHER, Material.STRING, Material.LEATHER,
+            Material.LEATHER, Material.CHEST, Material.LEATHER,
+            Material.LEATHER, Material.LEATHER, Material.LEATHER}),
+        new Craft("enderpack", BackpackTier.ENDERPACK, new Material[] {
+            Material.ENDER_EYE, Material.ENDER_PEARL, Material.ENDER_EYE,
+            Material.ENDER_PEARL, Material.CHEST, Material.ENDER_PEARL,
+            Material.ENDER_EYE, Material.IRON_BLOCK, Material.ENDER_EYE})
+    );
+
+    private static final List<Upgrade> UPGRADES = List.of(
+        new Upgrade("dirt_backpack", BackpackTier.LEATHER, Material.DIRT, BackpackTier.DIRT),
+        new Upgrade("copper_upgrade", BackpackTier.LEATHER, Material.COPPER_INGOT,
+            BackpackTier.COPPER),
+        new Upgrade("iron_upgrade", BackpackTier.COPPER, Material.IRON_INGOT, BackpackTier.IRON),
+        new Upgrade("gold_upgrade", BackpackTier.IRON, Material.GOLD_INGOT, BackpackTier.GOLD),
+        new Upgrade("diamond_upgrade", BackpackTier.GOLD, Material.DIAMOND, BackpackTier.DIAMOND)
+    );
+
+    private static final Map<Material, Craft> CRAFTS_BY_CORNER = new EnumMap<>(Material.class);
+    private static final Map<BackpackTier, Map<Material, Upgrade>> UPGRADES_BY_BASE =
+        new EnumMap<>(BackpackTier.class);
+    private static final Map<BackpackTier, Craft> CRAFTS_BY_RESULT =
+        new EnumMap<>(BackpackTier.class);
+    private static final Map<BackpackTier, Upgrade> UPGRADES_BY_RESULT =
+        new EnumMap<>(BackpackTier.class);
+
+    static {
+        for (Craft craft : CRAFTS) {
+            CRAFTS_BY_CORNER.put(craft.pattern()[0], craft);
+            CRAFTS_BY_RESULT.put(craft.result(), craft);
+        }
+        for (Upgrade upgrade : UPGRADES) {
+            UPGRADES_BY_BASE.computeIfAbsent(upgrade.base(), tier -> new EnumMap<>(Material.class))
+                .put(upgrade.material(), upgrade);
+            UPGRADES_BY_RESULT.put(upgrade.result(), upgrade);
+        }
+    }
+
+    private BackpackRecipeTable() {
+    }
+
+    /**
+     * Get every recipe crafting a new backpack.
+     *
+     * @return the craft recipes
+     */
+    public static List<Craft> getCrafts() {
+        return CRAFTS;
+    }
+
+    /**
+     * Get every upgrade recipe.
+     *
+     * @return the upgrade recipes
+     */
+    public static List<Upgrade> getUpgrades() {
+        return UPGRADES;
+    }
+
+    /**
+     * Find the craft recipe matching a 3x3 matrix with a chest in the center.
+     *
+     * @param matrix the 3x3 crafting matrix
+     * @return the matching recipe, or null
+     */
+    public static Craft matchCraft(ItemStack[] matrix) {
+        ItemStack corner = matrix[0];
+        if (corner == null) {
+            return null;
+        }
+        Craft craft = CRAFTS_BY_CORNER.get(corner.getType());
+        return craft != null && craft.matches(matrix) ? craft : null;
+    }
+
+    /**
+     * Find the upgrade of a tier with the given surrounding material.
+     *
+     * @param base the tier in the center
+     * @param material the surrounding material
+     * @return the matching upgrade, or null
+     */
+    public static Upgrade matchUpgrade(BackpackTier base, Material material) {
+        Map<Material, Upgrade> upgrades = UPGRADES_BY_BASE.get(base);
+        return upgrades == null ? null : upgrades.get(material);
+    }
+
+    /**
+     * Get the craft recipe producing a tier.
+     *
+     * @param result the tier
+     * @return the recipe, or null if the tier is not crafted from scratch
+     */
+    public static Craft getCraft(BackpackTier result) {
+        return CRAFTS_BY_RESULT.get(result);
+    }
+
+    /**
+     * Get the upgrade recipe producing a tier.
+     *
+     * @param result the tier
+     * @return the recipe, or null if the tier is not made by a 3x3 upgrade
+     */
+    public static Upgrade getUpgrade(BackpackTier result) {
+        return UPGRADES_BY_RESULT.get(result);
+    }
+}
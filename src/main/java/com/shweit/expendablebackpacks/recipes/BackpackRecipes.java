@@ -2,6 +2,8 @@ package com.shweit.expendablebackpacks.recipes;
 
 import com.shweit.expendablebackpacks.items.BackpackItem;
 import com.shweit.expendablebackpacks.items.BackpackTier;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.NamespacedKey;
@@ -30,17 +32,17 @@ public class BackpackRecipes {
 
     /**
      * Register all recipes.
-     * Upgrade recipes use ExactChoice with dummy backpacks to show correct icons.
+     * Crafting and 3x3 upgrade recipes are generated from the {@link BackpackRecipeTable}.
+     * Upgrade recipes use ExactChoice with template backpacks to show correct icons.
      */
     public void registerAll() {
         try {
-            registerDirtBackpack();
-            registerLeatherBackpack();
-            registerCopperUpgrade();
-            registerIronUpgrade();
-            registerGoldUpgrade();
-            registerDiamondUpgrade();
-            registerEnderpack();
+            for (BackpackRecipeTable.Craft craft : BackpackRecipeTable.getCrafts()) {
+                registerCraft(craft);
+            }
+            for (BackpackRecipeTable.Upgrade upgrade : BackpackRecipeTable.getUpgrades()) {
+                registerUpgrade(upgrade);
+            }
             registerEnderpackClone();
             registerNetheriteUpgrade();
         } catch (IllegalStateException e) {
@@ -49,60 +51,56 @@ public class BackpackRecipes {
     }
 
     /**
-     * Leather Backpack recipe (base crafting).
-     * L S L
-     * L C L
-     * L L L
+     * Register a recipe crafting a new backpack.
+     * Every distinct material of the pattern gets its own ingredient key.
+     *
+     * @param craft the recipe from the table
      */
-    private void registerLeatherBackpack() {
-        ItemStack result = BackpackItem.createBackpack(BackpackTier.LEATHER);
-        NamespacedKey key = new NamespacedKey(plugin, "leather_backpack");
+    private void registerCraft(BackpackRecipeTable.Craft craft) {
+        // The UUID is assigned by the crafting listener when the craft happens
+        ItemStack result = BackpackItem.createPreview(craft.result());
+        NamespacedKey key = new NamespacedKey(plugin, craft.key());
+
+        Map<Material, Character> symbols = new LinkedHashMap<>();
+        String[] shape = new String[3];
+        Material[] pattern = craft.pattern();
+        for (int row = 0; row < 3; row++) {
+            StringBuilder line = new StringBuilder(3);
+            for (int column = 0; column < 3; column++) {
+                Material material = pattern[row * 3 + column];
+                line.append(symbols.computeIfAbsent(material,
+                    m -> (char) ('A' + symbols.size())));
+            }
+            shape[row] = line.toString();
+        }
 
         ShapedRecipe recipe = new ShapedRecipe(key, result);
-        recipe.shape("LSL", "LCL", "LLL");
-        recipe.setIngredient('L', Material.LEATHER);
-        recipe.setIngredient('S', Material.STRING);
-        recipe.setIngredient('C', Material.CHEST);
+        recipe.shape(shape);
+        for (Map.Entry<Material, Character> entry : symbols.entrySet()) {
+            recipe.setIngredient(entry.getValue(), entry.getKey());
+        }
 
         Bukkit.addRecipe(recipe);
     }
 
     /**
-     * Dirt Backpack recipe (downgrade from Leather).
-     * D D D
-     * D B D
-     * D D D
+     * Register a recipe surrounding a backpack with eight of one material.
+     * M M M
+     * M B M
+     * M M M
+     *
+     * @param upgrade the recipe from the table
      */
-    private void registerDirtBackpack() {
-        ItemStack result = BackpackItem.createBackpack(BackpackTier.DIRT);
-        NamespacedKey key = new NamespacedKey(plugin, "dirt_backpack");
+    private void registerUpgrade(BackpackRecipeTable.Upgrade upgrade) {
+        ItemStack result = BackpackItem.createPreview(upgrade.result());
+        NamespacedKey key = new NamespacedKey(plugin, upgrade.key());
 
         ShapedRecipe recipe = new ShapedRecipe(key, result);
-        recipe.shape("DDD", "DBD", "DDD");
-        recipe.setIngredient('D', Material.DIRT);
-        // Use ExactChoice with Leather Backpack to show correct icon in recipe book
+        recipe.shape("MMM", "MBM", "MMM");
+        recipe.setIngredient('M', upgrade.material());
+        // Use ExactChoice with the base backpack to show correct icon in recipe book
         recipe.setIngredient('B', new RecipeChoice.ExactChoice(
-            BackpackItem.createBackpack(BackpackTier.LEATHER)));
-
-        Bukkit.addRecipe(recipe);
-    }
-
-    /**
-     * Enderpack recipe.
-     * E P E
-     * P C P
-     * E I E
-     */
-    private void registerEnderpack() {
-        ItemStack result = BackpackItem.createBackpack(BackpackTier.ENDERPACK);
-        NamespacedKey key = new NamespacedKey(plugin, "enderpack");
-
-        ShapedRecipe recipe = new ShapedRecipe(key, result);
-        recipe.shape("EPE", "PCP", "EIE");
-        recipe.setIngredient('E', Material.ENDER_EYE);
-        recipe.setIngredient('P', Material.ENDER_PEARL);
-        recipe.setIngredient('C', Material.CHEST);
-        recipe.setIngredient('I', Material.IRON_BLOCK);
+            BackpackItem.createPreview(upgrade.base())));
 
         Bukkit.addRecipe(recipe);
     }
@@ -113,92 +111,25 @@ public class BackpackRecipes {
      * Note: Listener handles dynamic amounts based on pearl count.
      */
     private void registerEnderpackClone() {
-        ItemStack result = BackpackItem.createBackpack(BackpackTier.ENDERPACK);
+        ItemStack result = BackpackItem.createPreview(BackpackTier.ENDERPACK);
         result.setAmount(2); // Show 2 in recipe book (actual amount is dynamic)
         NamespacedKey key = new NamespacedKey(plugin, "enderpack_clone");
 
         ShapelessRecipe recipe = new ShapelessRecipe(key, result);
         // Use ExactChoice to show correct Enderpack icon in recipe book
         recipe.addIngredient(new RecipeChoice.ExactChoice(
-            BackpackItem.createBackpack(BackpackTier.ENDERPACK)));
+            BackpackItem.createPreview(BackpackTier.ENDERPACK)));
         recipe.addIngredient(Material.ENDER_PEARL);
 
         Bukkit.addRecipe(recipe);
     }
 
-    /**
-     * Copper Backpack upgrade.
-     * C C C
-     * C B C
-     * C C C
-     */
-    private void registerCopperUpgrade() {
-        ItemStack result = BackpackItem.createBackpack(BackpackTier.COPPER);
-        NamespacedKey key = new NamespacedKey(plugin, "copper_upgrade");
-
-        ShapedRecipe recipe = new ShapedRecipe(key, result);
-        recipe.shape("CCC", "CBC", "CCC");
-        recipe.setIngredient('C', Material.COPPER_INGOT);
-        recipe.setIngredient('B', new RecipeChoice.ExactChoice(
-            BackpackItem.createBackpack(BackpackTier.LEATHER)));
-
-        Bukkit.addRecipe(recipe);
-    }
-
-    /**
-     * Iron Backpack upgrade.
-     */
-    private void registerIronUpgrade() {
-        ItemStack result = BackpackItem.createBackpack(BackpackTier.IRON);
-        NamespacedKey key = new NamespacedKey(plugin, "iron_upgrade");
-
-        ShapedRecipe recipe = new ShapedRecipe(key, result);
-        recipe.shape("III", "IBI", "III");
-        recipe.setIngredient('I', Material.IRON_INGOT);
-        recipe.setIngredient('B', new RecipeChoice.ExactChoice(
-            BackpackItem.createBackpack(BackpackTier.COPPER)));
-
-        Bukkit.addRecipe(recipe);
-    }
-
-    /**
-     * Gold Backpack upgrade.
-     */
-    private void registerGoldUpgrade() {
-        ItemStack result = BackpackItem.createBackpack(BackpackTier.GOLD);
-        NamespacedKey key = new NamespacedKey(plugin, "gold_upgrade");
-
-        ShapedRecipe recipe = new ShapedRecipe(key, result);
-        recipe.shape("GGG", "GBG", "GGG");
-        recipe.setIngredient('G', Material.GOLD_INGOT);
-        recipe.setIngredient('B', new RecipeChoice.ExactChoice(
-            BackpackItem.createBackpack(BackpackTier.IRON)));
-
-        Bukkit.addRecipe(recipe);
-    }
-
-    /**
-     * Diamond Backpack upgrade.
-     */
-    private void registerDiamondUpgrade() {
-        ItemStack result = BackpackItem.createBackpack(BackpackTier.DIAMOND);
-        NamespacedKey key = new NamespacedKey(plugin, "diamond_upgrade");
-
-        ShapedRecipe recipe = new ShapedRecipe(key, result);
-        recipe.shape("DDD", "DBD", "DDD");
-        recipe.setIngredient('D', Material.DIAMOND);
-        recipe.setIngredient('B', new RecipeChoice.ExactChoice(
-            BackpackItem.createBackpack(BackpackTier.GOLD)));
-
-        Bukkit.addRecipe(recipe);
-    }
-
     /**
      * Netherite Backpack upgrade via Smithing Table.
      * Diamond Backpack + Netherite Upgrade Template + Netherite Ingot.
      */
     private void registerNetheriteUpgrade() {
-        ItemStack result = BackpackItem.createBackpack(BackpackTier.NETHERITE);
+        ItemStack result = BackpackItem.createPreview(BackpackTier.NETHERITE);
         NamespacedKey key = new NamespacedKey(plugin, "netherite_upgrade");
 
         org.bukkit.inventory.SmithingTransformRecipe recipe =
@@ -208,7 +139,7 @@ public class BackpackRecipes {
                 new RecipeChoice.MaterialChoice(
                     Material.NETHERITE_UPGRADE_SMITHING_TEMPLATE),
                 new RecipeChoice.ExactChoice(
-                    BackpackItem.createBackpack(BackpackTier.DIAMOND)),
+                    BackpackItem.createPreview(BackpackTier.DIAMOND)),
                 new RecipeChoice.MaterialChoice(Material.NETHERITE_INGOT)
             );
 
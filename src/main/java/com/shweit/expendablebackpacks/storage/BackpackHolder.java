@@ -0,0 +1,61 @@
+package com.shweit.expendablebackpacks.storage;
+
+import com.shweit.expendablebackpacks.items.BackpackTier;
+import java.util.UUID;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+
+/**
+ * Holder of every backpack inventory created by the {@link BackpackManager}.
+ * Lets listeners identify a backpack inventory and its UUID with a single
+ * {@code instanceof} check instead of searching the loaded inventories.
+ */
+public final class BackpackHolder implements InventoryHolder {
+
+    private final UUID backpackUuid;
+    private final BackpackTier tier;
+    private Inventory inventory;
+
+    /**
+     * Create a new holder. The inventory is attached once it was created.
+     *
+     * @param backpackUuid the backpack UUID
+     * @param tier the backpack tier, or null if opened without a known tier
+     */
+    BackpackHolder(UUID backpackUuid, BackpackTier tier) {
+        this.backpackUuid = backpackUuid;
+        this.tier = tier;
+    }
+
+    /**
+     * Attach the inventory created for this holder.
+     *
+     * @param inventory the backpack inventory
+     */
+    void setInventory(Inventory inventory) {
+        this.inventory = inventory;
+    }
+
+    /**
+     * Get the backpack UUID.
+     *
+     * @return the backpack UUID
+     */
+    public UUID getBackpackUuid() {
+        return backpackUuid;
+    }
+
+    /**
+     * Get the backpack tier.
+     *
+     * @return the tier, or null if the backpack was opened without a known tier
+     */
+    public BackpackTier getTier() {
+        return tier;
+    }
+
+    @Override
+    public Inventory getInventory() {
+        return inventory;
+    }
+}
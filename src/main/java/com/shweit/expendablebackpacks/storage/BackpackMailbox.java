@@ -0,0 +1,90 @@
+package com.shweit.expendablebackpacks.storage;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Mailbox of a shared backpack. Every change to the backpack is queued here and applied
+ * one after another by a single drain loop, so the backpack has exactly one writer at a
+ * time without any locks. The drain loop runs on the given executor.
+ */
+final class BackpackMailbox {
+
+    private final Executor executor;
+    private final Queue<Runnable> messages;
+    private final AtomicBoolean draining;
+
+    /**
+     * Create a new mailbox.
+     *
+     * @param executor the executor running the drain loop
+     */
+    BackpackMailbox(Executor executor) {
+        this.executor = executor;
+        this.messages = new ConcurrentLinkedQueue<>();
+        this.draining = new AtomicBoolean(false);
+    }
+
+    /**
+     * Queue a message, it is applied after every message posted before it.
+     *
+     * @param message the change to apply
+     */
+    void post(Runnable message) {
+        messages.add(message);
+        scheduleDrain();
+    }
+
+    /**
+     * Check if no message is queued or being applied.
+     *
+     * @return true if the mailbox is idle
+     */
+    boolean isIdle() {
+        return !draining.get() && messages.isEmpty();
+    }
+
+    /**
+     * Apply every queued message on the calling thread.
+     * Only used on shutdown, when a scheduled drain loop may never run.
+     */
+    void drainNow() {
+        Runnable message;
+        while ((message = messages.poll()) != null) {
+            message.run();
+        }
+    }
+
+    /**
+     * Start a drain loop unless one is already running.
+     */
+    private void scheduleDrain() {
+        if (!draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(this::drain);
+        } catch (RuntimeException e) {
+            // Executor no longer accepts tasks, apply the messages on the calling thread
+            drain();
+        }
+    }
+
+    /**
+     * Apply queued messages until none are left.
+     */
+    private void drain() {
+        Runnable message;
+        while ((message = messages.poll()) != null) {
+            message.run();
+        }
+        draining.set(false);
+
+        // A message may have arrived after the last poll but before the flag was cleared
+        if (!messages.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+}
@@ -1,41 +1,111 @@
 package com.shweit.expendablebackpacks.storage;
 
 import com.shweit.expendablebackpacks.ExpendableBackpacks;
+import com.shweit.expendablebackpacks.items.BackpackTier;
+import com.shweit.expendablebackpacks.storage.codec.BackpackCodec;
+import com.shweit.expendablebackpacks.storage.codec.BinaryBackpackCodec;
+import com.shweit.expendablebackpacks.storage.codec.YamlBackpackCodec;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.logging.Level;
 import org.bukkit.Bukkit;
-import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.HumanEntity;
+import org.bukkit.entity.Player;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 
 /**
  * Manages backpack inventory storage and persistence.
+ *
+ * <p>Threading rules (on Folia, players in different regions use the manager at the same time):
+ * <ul>
+ *   <li>Every cache map is concurrent and may be read from any thread without locking.</li>
+ *   <li>Loading, resizing, capturing, evicting and clearing a backpack happen while holding
+ *       that backpack's lock stripe. A cold load only blocks backpacks sharing the stripe,
+ *       never the whole manager.</li>
+ *   <li>Locks are never nested across stripes. Eviction passes collect candidates first
+ *       and take each stripe on its own.</li>
+ *   <li>Storage engines are only touched by the IO executors. Callers wait for
+ *       {@link #whenLoaded} before {@link #getInventory}, so a load never blocks a server
+ *       thread; only a cold {@link #getInventory} without it reads on the calling thread.</li>
+ *   <li>A backpack whose stored record cannot be read is never cached, opened or saved, so
+ *       an empty inventory can never overwrite it. The record stays on disk untouched.</li>
+ *   <li>An open backpack is only captured on the thread that changes it. The flush timer
+ *       runs on the global region, so it hands open backpacks to a viewer's entity scheduler,
+ *       except shared ones, which are changed on the global region and captured there.</li>
+ *   <li>On Folia, the contents of a shared backpack (an Enderpack, whose clones may be open
+ *       in several regions) are only changed by its {@link BackpackMailbox}, which applies
+ *       messages on the global region. Viewers send {@link #take}, {@link #put} and
+ *       {@link #swap} messages instead of editing the inventory, and the server syncs the
+ *       result to every viewer.</li>
+ *   <li>The global region is the single owner of every shared backpack, so their changes
+ *       are serialized with each other. Folia has no thread owning an inventory seen from
+ *       several regions: the container sync of each viewer's region still reads the
+ *       inventory while the global region changes it, so a viewer may see a stale slot
+ *       until the next sync. Writes are never lost, since every click is a message.</li>
+ * </ul>
  */
 public class BackpackManager {
 
+    private static final int LOCK_STRIPES = 64;
+
     private final ExpendableBackpacks plugin;
-    private final File backpacksFile;
-    private YamlConfiguration backpacksConfig;
+    private final BackpackStorage storage;
+    private final SnapshotWriter writer;
     private final Map<UUID, Inventory> loadedInventories;
-    private final AtomicBoolean saving;
+    private final Set<UUID> dirtyBackpacks;
+    private final Map<UUID, BackpackSnapshot> lastSnapshots;
+    private final LinkedHashMap<UUID, Long> lastAccess;
+    private final Map<UUID, BackpackHolder> openViews;
+    private final Map<UUID, CompletableFuture<ItemStack[]>> prefetched;
+    private final Map<UUID, BackpackMailbox> mailboxes;
+    private final Set<UUID> unreadable;
+    private final Object[] locks;
+    private final int maxCachedInventories;
+    private final long idleMillis;
 
     /**
      * Create a new BackpackManager.
+     * The storage engine is selected with the storage.engine option in config.yml.
      *
      * @param plugin the plugin instance
      */
     @SuppressWarnings("EI_EXPOSE_REP2")
     public BackpackManager(ExpendableBackpacks plugin) {
         this.plugin = plugin;
-        this.loadedInventories = new HashMap<>();
-        this.saving = new AtomicBoolean(false);
+        this.loadedInventories = new ConcurrentHashMap<>();
+        this.dirtyBackpacks = ConcurrentHashMap.newKeySet();
+        this.lastSnapshots = new ConcurrentHashMap<>();
+        this.lastAccess = new LinkedHashMap<>(16, 0.75f, true);
+        this.openViews = new ConcurrentHashMap<>();
+        this.prefetched = new ConcurrentHashMap<>();
+        this.mailboxes = new ConcurrentHashMap<>();
+        this.unreadable = ConcurrentHashMap.newKeySet();
+        this.locks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        this.maxCachedInventories = Math.max(1,
+            plugin.getConfig().getInt("storage.cache.max-size", 1000));
+        this.idleMillis = Math.max(1L,
+            plugin.getConfig().getLong("storage.cache.idle-minutes", 10L)) * 60_000L;
 
         // Create data folder if it doesn't exist
         if (!plugin.getDataFolder().exists()) {
@@ -45,63 +115,483 @@ public class BackpackManager {
             }
         }
 
-        this.backpacksFile = new File(plugin.getDataFolder(), "backpacks.yml");
-        loadBackpacksFile();
+        this.storage = createStorage(plugin.getConfig().getString("storage.engine", "sharded"));
+        plugin.getLogger().info("Using " + storage.getName() + " backpack storage");
+        this.writer = new SnapshotWriter(storage,
+            plugin.getBackpackScheduler().getIoExecutor(),
+            plugin.getBackpackScheduler()::getStorageExecutor, plugin.getLogger());
+        if (!(storage instanceof YamlBackpackStorage)) {
+            migrateLegacyFile();
+        }
+
+        // Write changed backpacks in batches instead of on every click
+        long flushInterval = Math.max(1L, plugin.getConfig().getLong("storage.flush-interval", 100L));
+        plugin.getBackpackScheduler().runTaskTimer(this::flushDirty, flushInterval, flushInterval);
+
+        // Drop inventories nobody looked at for a while
+        plugin.getBackpackScheduler().runTaskTimer(this::evictIdle, 1200L, 1200L);
     }
 
     /**
-     * Load or create the backpacks.yml file.
+     * Create the storage engine with the given name.
+     * Falls back to the sharded engine for unknown names.
+     *
+     * @param engine the engine name from config.yml
+     * @return the storage engine
      */
-    private void loadBackpacksFile() {
-        if (!backpacksFile.exists()) {
-            try {
-                backpacksFile.createNewFile();
-            } catch (IOException e) {
-                plugin.getLogger().log(Level.SEVERE, "Could not create backpacks.yml!", e);
+    private BackpackStorage createStorage(String engine) {
+        switch (engine.toLowerCase()) {
+            case "yaml":
+                try {
+                    return new YamlBackpackStorage(new File(plugin.getDataFolder(), "backpacks.yml"));
+                } catch (IOException e) {
+                    plugin.getLogger().log(Level.SEVERE,
+                        "Could not create backpacks.yml, falling back to sharded storage!", e);
+                }
+                break;
+            case "journal":
+                try {
+                    return new JournalBackpackStorage(new File(plugin.getDataFolder(), "journal"),
+                        createCodec(plugin.getConfig().getString("storage.format", "binary")),
+                        plugin.getConfig().getLong("storage.journal.segment-size-mb", 64L)
+                            * 1024L * 1024L,
+                        plugin.getConfig().getDouble("storage.journal.compaction-threshold", 0.5),
+                        plugin.getConfig().getInt("storage.journal.fold-after", 16),
+                        plugin.getBackpackScheduler().getCompactionExecutor(),
+                        plugin.getLogger());
+                } catch (IOException e) {
+                    plugin.getLogger().log(Level.SEVERE,
+                        "Could not open backpack journal, falling back to sharded storage!", e);
+                }
+                break;
+            case "mmap":
+                try {
+                    return new MappedBackpackStorage(new File(plugin.getDataFolder(), "segments"),
+                        createCodec(plugin.getConfig().getString("storage.format", "binary")),
+                        (int) Math.min(1024L,
+                            plugin.getConfig().getLong("storage.mmap.segment-size-mb", 64L))
+                            * 1024 * 1024,
+                        plugin.getLogger());
+                } catch (IOException e) {
+                    plugin.getLogger().log(Level.SEVERE,
+                        "Could not map backpack segments, falling back to sharded storage!", e);
+                }
+                break;
+            case "sharded":
+                break;
+            default:
+                plugin.getLogger().warning("Unknown storage engine '" + engine
+                    + "', falling back to sharded storage");
+                break;
+        }
+        return new ShardedBackpackStorage(new File(plugin.getDataFolder(), "backpacks"),
+            createCodec(plugin.getConfig().getString("storage.format", "binary")));
+    }
+
+    /**
+     * Create the record format with the given name.
+     * Falls back to the binary format for unknown names.
+     *
+     * @param format the format name from config.yml
+     * @return the record codec
+     */
+    private BackpackCodec createCodec(String format) {
+        switch (format.toLowerCase()) {
+            case "yaml":
+                return new YamlBackpackCodec();
+            case "binary":
+                return new BinaryBackpackCodec();
+            default:
+                plugin.getLogger().warning("Unknown storage format '" + format
+                    + "', falling back to binary records");
+                return new BinaryBackpackCodec();
+        }
+    }
+
+    /**
+     * Copy a legacy single-file backpacks.yml into the selected storage engine.
+     * The old file is kept as backpacks.yml.migrated once every backpack was written.
+     */
+    private void migrateLegacyFile() {
+        File legacyFile = new File(plugin.getDataFolder(), "backpacks.yml");
+        if (!legacyFile.exists()) {
+            return;
+        }
+
+        int migrated = 0;
+        try {
+            YamlBackpackStorage legacyStorage = new YamlBackpackStorage(legacyFile);
+            for (UUID backpackUuid : legacyStorage.keys()) {
+                ItemStack[] contents = legacyStorage.load(backpackUuid);
+                if (contents != null) {
+                    storage.store(backpackUuid, contents);
+                    migrated++;
+                }
             }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE,
+                "Could not migrate backpacks.yml, keeping it for the next start", e);
+            return;
         }
-        backpacksConfig = YamlConfiguration.loadConfiguration(backpacksFile);
+
+        File migratedFile = new File(plugin.getDataFolder(), "backpacks.yml.migrated");
+        if (!legacyFile.renameTo(migratedFile)) {
+            plugin.getLogger().warning("Could not rename backpacks.yml after migration!");
+        }
+        plugin.getLogger().info("Migrated " + migrated + " backpacks to "
+            + storage.getName() + " storage");
     }
 
     /**
-     * Save the backpacks.yml file.
+     * Hand a snapshot to the writer.
+     * While the server is shutting down the snapshot is written on the calling thread.
+     *
+     * @param snapshot the snapshot to write
      */
-    private void saveBackpacksFile() {
+    private void submit(BackpackSnapshot snapshot) {
+        writer.submit(snapshot);
         if (Bukkit.getServer().isStopping() || plugin.isShuttingDown()) {
-            try {
-                backpacksConfig.save(backpacksFile);
-            } catch (IOException e) {
-                plugin.getLogger().log(Level.SEVERE, "Could not save backpacks.yml!", e);
+            writer.drain();
+        }
+    }
+
+    /**
+     * Get the lock stripe guarding a backpack.
+     *
+     * @param backpackUuid the backpack UUID
+     * @return the lock object
+     */
+    private Object lockFor(UUID backpackUuid) {
+        return locks[Math.floorMod(backpackUuid.hashCode(), LOCK_STRIPES)];
+    }
+
+    /**
+     * Capture a backpack as a delta against its last captured snapshot.
+     * The new snapshot becomes the baseline for the next capture, so the baseline is
+     * read and replaced under the backpack's lock.
+     *
+     * @param backpackUuid the backpack UUID
+     * @param inventory the inventory to capture
+     * @return the snapshot
+     */
+    private BackpackSnapshot capture(UUID backpackUuid, Inventory inventory) {
+        synchronized (lockFor(backpackUuid)) {
+            BackpackSnapshot snapshot = BackpackSnapshot.capture(backpackUuid, inventory,
+                lastSnapshots.get(backpackUuid));
+            lastSnapshots.put(backpackUuid, snapshot);
+            return snapshot;
+        }
+    }
+
+    /**
+     * Mark a backpack as changed.
+     * The backpack is written with the next flush instead of immediately.
+     *
+     * @param backpackUuid the backpack UUID
+     */
+    public void markDirty(UUID backpackUuid) {
+        dirtyBackpacks.add(backpackUuid);
+    }
+
+    /**
+     * Write a single backpack now if it has unsaved changes.
+     *
+     * @param backpackUuid the backpack UUID
+     */
+    public void flush(UUID backpackUuid) {
+        synchronized (lockFor(backpackUuid)) {
+            if (!dirtyBackpacks.remove(backpackUuid)) {
+                return;
+            }
+            Inventory inventory = loadedInventories.get(backpackUuid);
+            if (inventory != null) {
+                submit(capture(backpackUuid, inventory));
             }
+        }
+    }
+
+    /**
+     * Write a backpack whose view just closed. Shared backpacks are changed on the global
+     * region, so they are captured there instead of on the viewer's thread.
+     *
+     * @param holder the holder of the closed backpack
+     */
+    public void flushView(BackpackHolder holder) {
+        UUID backpackUuid = holder.getBackpackUuid();
+        if (!isShared(holder)) {
+            flush(backpackUuid);
             return;
         }
-        if (saving.get())
+        try {
+            plugin.getBackpackScheduler().runTask(() -> flush(backpackUuid));
+        } catch (RuntimeException e) {
+            // Scheduler no longer accepts tasks, it stays dirty for the final save
+        }
+    }
+
+    /**
+     * Capture every backpack with unsaved changes and hand them to the writer as one batch.
+     * On Folia, open backpacks are captured on the thread of one of their viewers instead,
+     * apart from shared ones, which this global region task captures itself.
+     */
+    public void flushDirty() {
+        // Backpacks whose last write failed are retried once per flush interval
+        writer.retryFailed();
+        if (dirtyBackpacks.isEmpty()) {
             return;
-        saving.set(true);
-        plugin.getBackpackScheduler().runTaskAsync(() -> {
-            try {
-                backpacksConfig.save(backpacksFile);
-            } catch (IOException e) {
-                plugin.getLogger().log(Level.SEVERE, "Could not save backpacks.yml!", e);
+        }
+
+        Map<UUID, UUID> viewers = plugin.getBackpackScheduler().isFolia() ? viewersByBackpack()
+            : Map.of();
+
+        // Remove one by one, a backpack marked dirty meanwhile stays in the set
+        for (UUID backpackUuid : dirtyBackpacks) {
+            Player viewer = viewers.containsKey(backpackUuid)
+                ? Bukkit.getPlayer(viewers.get(backpackUuid)) : null;
+            if (viewer != null) {
+                // Stays dirty until the viewer's region gets to it, a retired viewer
+                // leaves it for the next flush
+                plugin.getBackpackScheduler().runTask(() -> flush(backpackUuid), viewer);
+                continue;
+            }
+            synchronized (lockFor(backpackUuid)) {
+                if (!dirtyBackpacks.remove(backpackUuid)) {
+                    continue;
+                }
+                Inventory inventory = loadedInventories.get(backpackUuid);
+                if (inventory != null) {
+                    writer.submit(capture(backpackUuid, inventory));
+                }
+            }
+        }
+    }
+
+    /**
+     * Map every open backpack to one of its viewers.
+     * Shared backpacks are left out, the global region changes them and captures them too.
+     *
+     * @return the player UUID of a viewer by backpack UUID
+     */
+    private Map<UUID, UUID> viewersByBackpack() {
+        Map<UUID, UUID> viewers = new HashMap<>();
+        openViews.forEach((viewer, holder) -> {
+            if (!isShared(holder)) {
+                viewers.put(holder.getBackpackUuid(), viewer);
             }
-            saving.set(false);
         });
+        return viewers;
+    }
+
+    /**
+     * Collect the backpacks that are open for someone, they are never evicted.
+     * Open views are tracked by the manager, so this never reads the viewers of an inventory
+     * from another region.
+     *
+     * @return the UUIDs of all open backpacks
+     */
+    private Set<UUID> openBackpacks() {
+        Set<UUID> open = new HashSet<>();
+        openViews.values().forEach(holder -> open.add(holder.getBackpackUuid()));
+        return open;
+    }
+
+    /**
+     * Record an access to a backpack, moving it to the end of the eviction order.
+     *
+     * @param backpackUuid the backpack UUID
+     */
+    private void touch(UUID backpackUuid) {
+        synchronized (lastAccess) {
+            lastAccess.put(backpackUuid, System.nanoTime());
+        }
+    }
+
+    /**
+     * Drop a backpack from the eviction order.
+     *
+     * @param backpackUuid the backpack UUID
+     */
+    private void forget(UUID backpackUuid) {
+        synchronized (lastAccess) {
+            lastAccess.remove(backpackUuid);
+        }
+    }
+
+    /**
+     * Collect the least recently used backpacks that are not open, oldest first.
+     *
+     * @param open the backpacks that are open for someone
+     * @param limit the maximum number of candidates
+     * @param cutoff only take backpacks accessed before this {@link System#nanoTime}, or null
+     * @return the last access of every candidate by backpack UUID
+     */
+    private Map<UUID, Long> evictionCandidates(Set<UUID> open, int limit, Long cutoff) {
+        Map<UUID, Long> candidates = new LinkedHashMap<>();
+        synchronized (lastAccess) {
+            // Iterating the entries does not count as an access
+            for (Map.Entry<UUID, Long> entry : lastAccess.entrySet()) {
+                if (candidates.size() >= limit
+                    || (cutoff != null && entry.getValue() - cutoff >= 0)) {
+                    break;
+                }
+                if (!open.contains(entry.getKey())) {
+                    candidates.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Drop a backpack from the cache, writing its unsaved changes first.
+     * Skipped if the backpack was accessed since it was picked, it may have been opened
+     * meanwhile.
+     *
+     * @param backpackUuid the backpack UUID
+     * @param accessed the last access the backpack was picked with
+     * @return true if the backpack was evicted
+     */
+    private boolean evict(UUID backpackUuid, long accessed) {
+        synchronized (lockFor(backpackUuid)) {
+            synchronized (lastAccess) {
+                // remove(key, value) leaves the access order alone, unlike get
+                if (!lastAccess.remove(backpackUuid, accessed)) {
+                    return false;
+                }
+            }
+            Inventory inventory = loadedInventories.get(backpackUuid);
+            if (inventory == null) {
+                return false;
+            }
+            flush(backpackUuid);
+            loadedInventories.remove(backpackUuid);
+            lastSnapshots.remove(backpackUuid);
+            mailboxes.computeIfPresent(backpackUuid,
+                (uuid, mailbox) -> mailbox.isIdle() ? null : mailbox);
+            return true;
+        }
+    }
+
+    /**
+     * Evict the least recently used inventories until the cache fits its size limit.
+     */
+    private void evictOverflow() {
+        if (loadedInventories.size() <= maxCachedInventories) {
+            return;
+        }
+
+        Set<UUID> open = openBackpacks();
+        int excess;
+        while ((excess = loadedInventories.size() - maxCachedInventories) > 0) {
+            Map<UUID, Long> candidates = evictionCandidates(open, excess, null);
+            if (candidates.isEmpty()) {
+                break;
+            }
+            candidates.forEach(this::evict);
+        }
+    }
+
+    /**
+     * Evict every inventory that was not accessed within the idle time.
+     */
+    public void evictIdle() {
+        // Prefetched contents are only meant for the next few opens after a join
+        prefetched.values().removeIf(CompletableFuture::isDone);
+
+        long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        evictionCandidates(openBackpacks(), Integer.MAX_VALUE, cutoff).forEach(this::evict);
+
+        // Mailboxes that were still busy when their backpack was evicted
+        for (UUID backpackUuid : mailboxes.keySet()) {
+            if (!loadedInventories.containsKey(backpackUuid)) {
+                mailboxes.computeIfPresent(backpackUuid,
+                    (uuid, mailbox) -> mailbox.isIdle() ? null : mailbox);
+            }
+        }
+    }
+
+    /**
+     * Create an empty backpack inventory owned by a {@link BackpackHolder}.
+     *
+     * @param backpackUuid the backpack UUID
+     * @param tier the backpack tier, or null if unknown
+     * @param title the inventory title
+     * @param slots the number of slots
+     * @return the new inventory
+     */
+    private Inventory createInventory(UUID backpackUuid, BackpackTier tier, String title, int slots) {
+        BackpackHolder holder = new BackpackHolder(backpackUuid, tier);
+        Inventory inventory = Bukkit.createInventory(holder, slots, title);
+        holder.setInventory(inventory);
+        return inventory;
+    }
+
+    /**
+     * Get or create the inventory of a backpack of the given tier.
+     *
+     * @param backpackUuid the backpack UUID
+     * @param tier the backpack tier
+     * @return the inventory, or null if the stored backpack cannot be read
+     */
+    public Inventory getInventory(UUID backpackUuid, BackpackTier tier) {
+        return getInventory(backpackUuid, tier, tier.getDisplayName(), tier.getSlots());
+    }
+
+    /**
+     * Get or create an inventory for a backpack UUID whose tier is not known.
+     *
+     * @param backpackUuid the backpack UUID
+     * @param title the inventory title
+     * @param slots the number of slots
+     * @return the inventory, or null if the stored backpack cannot be read
+     */
+    public Inventory getInventory(UUID backpackUuid, String title, int slots) {
+        return getInventory(backpackUuid, null, title, slots);
     }
 
     /**
      * Get or create an inventory for a backpack UUID.
      *
      * @param backpackUuid the backpack UUID
+     * @param tier the backpack tier, or null if unknown
      * @param title the inventory title
      * @param slots the number of slots
-     * @return the inventory
+     * @return the inventory, or null if the stored backpack cannot be read
      */
     @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
-    public Inventory getInventory(UUID backpackUuid, String title, int slots) {
+    private Inventory getInventory(UUID backpackUuid, BackpackTier tier, String title, int slots) {
         UUID backpackUUID = backpackUuid;
-        // Check if already loaded in memory
-        if (loadedInventories.containsKey(backpackUUID)) {
-            Inventory cached = loadedInventories.get(backpackUUID);
+        touch(backpackUUID);
+
+        // Fast path without locking, the common case of an already loaded backpack
+        Inventory cached = loadedInventories.get(backpackUUID);
+        if (cached != null && cached.getSize() == slots) {
+            return cached;
+        }
+
+        Inventory inventory;
+        synchronized (lockFor(backpackUUID)) {
+            inventory = loadOrResize(backpackUUID, tier, title, slots);
+        }
+        evictOverflow();
+        return inventory;
+    }
+
+    /**
+     * Load a backpack into the cache or resize its cached inventory.
+     * Must be called while holding the backpack's lock.
+     *
+     * @param backpackUUID the backpack UUID
+     * @param tier the backpack tier, or null if unknown
+     * @param title the inventory title
+     * @param slots the number of slots
+     * @return the inventory, or null if the stored backpack cannot be read
+     */
+    @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
+    private Inventory loadOrResize(UUID backpackUUID, BackpackTier tier, String title, int slots) {
+        // Check again, another thread may have loaded it while we waited for the lock
+        Inventory cached = loadedInventories.get(backpackUUID);
+        if (cached != null) {
 
             // Check if size matches (in case of upgrade)
             if (cached.getSize() == slots) {
@@ -112,7 +602,7 @@ public class BackpackManager {
                     + cached.getSize() + " to " + slots + " slots");
 
                 // Create new inventory with new size
-                Inventory newInventory = Bukkit.createInventory(null, slots, title);
+                Inventory newInventory = createInventory(backpackUUID, tier, title, slots);
 
                 // Copy old contents (will fit since upgrades only increase size)
                 ItemStack[] oldContents = cached.getContents();
@@ -124,43 +614,105 @@ public class BackpackManager {
                     }
                 }
 
-                // Update cache and save
+                // Update cache and write with the next flush
                 loadedInventories.put(backpackUUID, newInventory);
-                saveInventory(backpackUUID, newInventory);
+                touch(backpackUUID);
+                markDirty(backpackUUID);
                 return newInventory;
             }
         }
 
+        // Load saved contents if they exist, preferring a snapshot that is not written yet
+        ItemStack[] contents = null;
+        BackpackSnapshot pendingSnapshot = writer.getPending(backpackUUID);
+        CompletableFuture<ItemStack[]> prefetch = prefetched.remove(backpackUUID);
+        if (pendingSnapshot != null) {
+            contents = pendingSnapshot.getContents();
+        } else {
+            try {
+                contents = load(backpackUUID, prefetch);
+            } catch (IOException e) {
+                // Never hand out an empty inventory in its place, the next save would wipe it
+                if (unreadable.add(backpackUUID)) {
+                    plugin.getLogger().log(Level.SEVERE, "Could not load backpack " + backpackUUID
+                        + ", it stays closed until its record is repaired!", e);
+                }
+                forget(backpackUUID);
+                return null;
+            }
+        }
+        unreadable.remove(backpackUUID);
+
         // Create new inventory
-        Inventory inventory = Bukkit.createInventory(null, slots, title);
-
-        // Load saved contents if they exist
-        String path = backpackUUID.toString() + ".contents";
-        if (backpacksConfig.contains(path)) {
-            Object contentsObj = backpacksConfig.get(path);
-            if (contentsObj != null) {
-                @SuppressWarnings("unchecked")
-                ItemStack[] contents = ((java.util.List<ItemStack>) contentsObj)
-                    .toArray(new ItemStack[0]);
-
-                // Copy contents (handle size mismatch if saved size differs)
-                for (int i = 0; i < contents.length && i < slots; i++) {
-                    if (contents[i] != null) {
-                        inventory.setItem(i, contents[i]);
-                    }
+        Inventory inventory = createInventory(backpackUUID, tier, title, slots);
+        if (contents != null) {
+            // Copy contents (handle size mismatch if saved size differs)
+            for (int i = 0; i < contents.length && i < slots; i++) {
+                if (contents[i] != null) {
+                    inventory.setItem(i, contents[i]);
                 }
             }
         }
 
-        // Cache in memory
+        // Cache in memory, the loaded contents are the baseline for the first delta
         loadedInventories.put(backpackUUID, inventory);
+        touch(backpackUUID);
+        if (contents != null) {
+            lastSnapshots.put(backpackUUID, BackpackSnapshot.of(backpackUUID, contents));
+        }
 
-        // Save immediately to YAML so it appears in tab completions
-        saveInventory(backpackUUID, inventory);
-
+        // New backpacks are written with the next flush so they appear in tab completions
+        if (contents == null) {
+            markDirty(backpackUUID);
+        }
         return inventory;
     }
 
+    /**
+     * Load the stored contents of a backpack, taking over a prefetch if one was started.
+     *
+     * @param backpackUuid the backpack UUID
+     * @param prefetch the prefetch of the backpack, or null
+     * @return the contents, or null if nothing is stored
+     * @throws IOException if the stored backpack cannot be read
+     */
+    private ItemStack[] load(UUID backpackUuid, CompletableFuture<ItemStack[]> prefetch)
+        throws IOException {
+        if (prefetch != null) {
+            // Already loaded or still in flight, either way cheaper than a second read
+            try {
+                return prefetch.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof IOException io ? io
+                    : new IOException("Could not load backpack " + backpackUuid, e.getCause());
+            } catch (CancellationException e) {
+                // Read again below
+            }
+        }
+        return storage.load(backpackUuid);
+    }
+
+    /**
+     * Start loading a backpack off the server threads unless it is already in memory.
+     * Once the future completes, {@link #getInventory} no longer waits for the disk.
+     * The future never fails, a failed load is reported by {@link #getInventory}.
+     *
+     * @param backpackUuid the backpack UUID
+     * @return a future completed once the backpack can be opened without a disk read
+     */
+    public CompletableFuture<Void> whenLoaded(UUID backpackUuid) {
+        if (loadedInventories.containsKey(backpackUuid)
+            || writer.getPending(backpackUuid) != null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        prefetch(backpackUuid);
+        CompletableFuture<ItemStack[]> load = prefetched.get(backpackUuid);
+        if (load == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return load.handle((contents, error) -> null);
+    }
+
     /**
      * Save a backpack inventory.
      *
@@ -170,15 +722,19 @@ public class BackpackManager {
     @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
     public void saveInventory(UUID backpackUuid, Inventory inventory) {
         UUID backpackUUID = backpackUuid;
-        String path = backpackUUID.toString() + ".contents";
-        ItemStack[] contents = inventory.getContents();
-        if (contents != null) {
-            backpacksConfig.set(path, java.util.Arrays.asList(contents));
+        if (unreadable.contains(backpackUUID)) {
+            plugin.getLogger().warning("Not saving backpack " + backpackUUID
+                + ", its stored record could not be read");
+            return;
         }
-        saveBackpacksFile();
+        synchronized (lockFor(backpackUUID)) {
+            dirtyBackpacks.remove(backpackUUID);
+            submit(capture(backpackUUID, inventory));
 
-        // Update cache
-        loadedInventories.put(backpackUUID, inventory);
+            // Update cache
+            loadedInventories.put(backpackUUID, inventory);
+            touch(backpackUUID);
+        }
     }
 
     /**
@@ -189,12 +745,26 @@ public class BackpackManager {
     @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
     public void clearInventory(UUID backpackUuid) {
         UUID backpackUUID = backpackUuid;
-        // Remove from file
-        backpacksConfig.set(backpackUUID.toString(), null);
-        saveBackpacksFile();
+        synchronized (lockFor(backpackUUID)) {
+            // Remove from storage
+            submit(BackpackSnapshot.deletion(backpackUUID));
 
-        // Remove from cache
-        loadedInventories.remove(backpackUUID);
+            // Remove from cache, a cleared backpack starts over even if it was unreadable
+            dirtyBackpacks.remove(backpackUUID);
+            unreadable.remove(backpackUUID);
+            prefetched.remove(backpackUUID);
+            loadedInventories.remove(backpackUUID);
+            lastSnapshots.remove(backpackUUID);
+            forget(backpackUUID);
+        }
+    }
+
+    /**
+     * Apply every message still queued for a shared backpack (called on plugin disable,
+     * before saving). Scheduled drain loops no longer run once the plugin is disabled.
+     */
+    public void drainMailboxes() {
+        mailboxes.values().forEach(BackpackMailbox::drainNow);
     }
 
     /**
@@ -202,23 +772,70 @@ public class BackpackManager {
      */
     public void saveAllInventories() {
         for (Map.Entry<UUID, Inventory> entry : loadedInventories.entrySet()) {
-            String path = entry.getKey().toString() + ".contents";
-            ItemStack[] contents = entry.getValue().getContents();
-            if (contents != null) {
-                backpacksConfig.set(path, java.util.Arrays.asList(contents));
+            synchronized (lockFor(entry.getKey())) {
+                dirtyBackpacks.remove(entry.getKey());
+                writer.submit(capture(entry.getKey(), entry.getValue()));
             }
         }
-        saveBackpacksFile();
-        plugin.getLogger().info("Saved " + loadedInventories.size() + " backpack inventories");
+        if (writer.drain()) {
+            plugin.getLogger().info("Saved " + loadedInventories.size() + " backpack inventories");
+        }
     }
 
     /**
-     * Load all backpacks from file (called on plugin enable).
+     * Close the storage engine (called on plugin disable, after saving).
+     */
+    public void close() {
+        try {
+            storage.close();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not close " + storage.getName()
+                + " backpack storage!", e);
+        }
+    }
+
+    /**
+     * Report the stored backpacks (called on plugin enable).
+     * Contents are not loaded here; every engine only keeps a key index and decodes
+     * a backpack the first time {@link #getInventory} asks for it. Counting the keys
+     * can still mean a directory walk, so it runs on the IO thread.
      */
     public void loadAllBackpacks() {
-        loadBackpacksFile();
-        int count = backpacksConfig.getKeys(false).size();
-        plugin.getLogger().info("Loaded data for " + count + " backpacks");
+        storage.keysAsync(plugin.getBackpackScheduler().getIoExecutor())
+            .whenComplete((keys, error) -> {
+                if (error != null) {
+                    plugin.getLogger().log(Level.SEVERE, "Could not list stored backpacks!", error);
+                } else {
+                    plugin.getLogger().info("Found " + keys.size() + " stored backpacks");
+                }
+            });
+    }
+
+    /**
+     * Start loading a backpack in the background so a later {@link #getInventory} does not
+     * have to wait for the disk. Loads of different backpacks run in parallel on virtual
+     * threads and are ordered behind earlier writes of the same backpack.
+     *
+     * @param backpackUuid the backpack UUID
+     */
+    public void prefetch(UUID backpackUuid) {
+        if (loadedInventories.containsKey(backpackUuid) || prefetched.containsKey(backpackUuid)
+            || writer.getPending(backpackUuid) != null) {
+            return;
+        }
+        try {
+            CompletableFuture<ItemStack[]> load = storage.loadAsync(backpackUuid,
+                plugin.getBackpackScheduler().getStorageExecutor(backpackUuid));
+            prefetched.put(backpackUuid, load);
+            load.whenComplete((contents, error) -> {
+                if (error != null) {
+                    plugin.getLogger().log(Level.SEVERE,
+                        "Could not prefetch backpack " + backpackUuid + "!", error);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down, the backpack is loaded on demand instead
+        }
     }
 
     /**
@@ -230,7 +847,11 @@ public class BackpackManager {
     @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
     public boolean backpackExists(UUID backpackUuid) {
         UUID backpackUUID = backpackUuid;
-        return backpacksConfig.contains(backpackUUID.toString() + ".contents");
+        BackpackSnapshot pendingSnapshot = writer.getPending(backpackUUID);
+        if (pendingSnapshot != null) {
+            return !pendingSnapshot.isDeletion();
+        }
+        return storage.exists(backpackUUID);
     }
 
     /**
@@ -246,44 +867,209 @@ public class BackpackManager {
     }
 
     /**
-     * Get all saved backpack UUIDs from file.
-     * All backpacks are immediately saved when created, so file is always up-to-date.
+     * Get all saved backpack UUIDs from storage.
+     * All backpacks are immediately saved when created, so storage is always up-to-date.
      *
      * @return list of all backpack UUIDs
      */
     @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
     public List<UUID> getAllBackpackUUIDs() {
-        // Reload config to get latest data
-        backpacksConfig = YamlConfiguration.loadConfiguration(backpacksFile);
+        try {
+            Set<UUID> uuids = new LinkedHashSet<>(storage.keys());
+            for (BackpackSnapshot snapshot : writer.getPendingSnapshots()) {
+                if (snapshot.isDeletion()) {
+                    uuids.remove(snapshot.getBackpackUuid());
+                } else {
+                    uuids.add(snapshot.getBackpackUuid());
+                }
+            }
+            return new ArrayList<>(uuids);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not list stored backpacks!", e);
+            return new ArrayList<>();
+        }
+    }
 
-        List<UUID> uuids = new ArrayList<>();
+    /**
+     * Check if changes to an open backpack have to go through its mailbox.
+     * Only Enderpacks are shared, and only Folia ticks their viewers on several threads.
+     *
+     * @param holder the holder of the open backpack
+     * @return true if the backpack is shared across regions
+     */
+    public boolean isShared(BackpackHolder holder) {
+        return plugin.getBackpackScheduler().isFolia()
+            && holder.getTier() != null && holder.getTier().isEnderpack();
+    }
 
-        for (String key : backpacksConfig.getKeys(false)) {
+    /**
+     * Queue a change to a shared backpack. Messages to the same backpack are applied
+     * one after another in the order they were sent, on the global region thread, so the
+     * inventory is never loaded or changed from a thread that does not tick the server.
+     *
+     * @param holder the holder of the backpack
+     * @param message the change, applied to the current inventory of the backpack
+     * @param <T> the result type
+     * @return a future completed with the result of the change
+     */
+    private <T> CompletableFuture<T> send(BackpackHolder holder, Function<Inventory, T> message) {
+        UUID backpackUuid = holder.getBackpackUuid();
+        BackpackTier tier = holder.getTier();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable apply = () -> {
             try {
-                // Try to parse the key directly as UUID
-                UUID uuid = UUID.fromString(key);
-                uuids.add(uuid);
-            } catch (IllegalArgumentException e) {
-                // Skip invalid UUID keys
+                Inventory inventory = getInventory(backpackUuid, tier);
+                if (inventory == null) {
+                    throw new IOException("Backpack " + backpackUuid + " could not be loaded");
+                }
+                result.complete(message.apply(inventory));
+                markDirty(backpackUuid);
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        };
+
+        // Posted inside compute, so an idle mailbox cannot be dropped while a message is added
+        mailboxes.compute(backpackUuid, (uuid, mailbox) -> {
+            BackpackMailbox target = mailbox != null ? mailbox
+                : new BackpackMailbox(plugin.getBackpackScheduler().getMailboxExecutor());
+            target.post(apply);
+            return target;
+        });
+        return result;
+    }
+
+    /**
+     * Take items out of a slot of a shared backpack.
+     *
+     * @param holder the holder of the backpack
+     * @param slot the slot to take from
+     * @param expected the item the viewer saw in the slot
+     * @param amount the number of items to take
+     * @return a future completed with the taken items, or null if the slot changed meanwhile
+     */
+    public CompletableFuture<ItemStack> take(BackpackHolder holder, int slot, ItemStack expected,
+                                             int amount) {
+        return send(holder, inventory -> {
+            ItemStack current = inventory.getItem(slot);
+            if (current == null || expected == null || !current.isSimilar(expected)) {
+                return null;
+            }
+            int taken = Math.min(amount, current.getAmount());
+            ItemStack rest = current.clone();
+            rest.setAmount(current.getAmount() - taken);
+            inventory.setItem(slot, rest.getAmount() > 0 ? rest : null);
+            ItemStack result = current.clone();
+            result.setAmount(taken);
+            return result;
+        });
+    }
+
+    /**
+     * Put items into a shared backpack.
+     *
+     * @param holder the holder of the backpack
+     * @param slot the preferred slot, or -1 for the first free space
+     * @param item the items to put in
+     * @return a future completed with the items that did not fit, or null
+     */
+    public CompletableFuture<ItemStack> put(BackpackHolder holder, int slot, ItemStack item) {
+        return send(holder, inventory -> {
+            ItemStack leftover = item.clone();
+            if (slot >= 0 && slot < inventory.getSize()) {
+                ItemStack current = inventory.getItem(slot);
+                if (current == null) {
+                    inventory.setItem(slot, leftover);
+                    return null;
+                }
+                if (current.isSimilar(leftover)) {
+                    int moved = Math.min(leftover.getAmount(),
+                        current.getMaxStackSize() - current.getAmount());
+                    if (moved > 0) {
+                        ItemStack merged = current.clone();
+                        merged.setAmount(current.getAmount() + moved);
+                        inventory.setItem(slot, merged);
+                        leftover.setAmount(leftover.getAmount() - moved);
+                    }
+                    return leftover.getAmount() > 0 ? leftover : null;
+                }
+            }
+            Map<Integer, ItemStack> rest = inventory.addItem(leftover);
+            return rest.isEmpty() ? null : rest.values().iterator().next();
+        });
+    }
+
+    /**
+     * Swap the item in a slot of a shared backpack.
+     *
+     * @param holder the holder of the backpack
+     * @param slot the slot
+     * @param expected the item the viewer saw in the slot
+     * @param item the item to put into the slot
+     * @return a future completed with the previous item, or the given item itself if the
+     *     slot changed meanwhile
+     */
+    public CompletableFuture<ItemStack> swap(BackpackHolder holder, int slot, ItemStack expected,
+                                             ItemStack item) {
+        return send(holder, inventory -> {
+            ItemStack current = inventory.getItem(slot);
+            if (!Objects.equals(current, expected)) {
+                return item;
             }
+            inventory.setItem(slot, item.clone());
+            return current;
+        });
+    }
+
+    /**
+     * Remember which backpack a player has open, resolved once when the view opens.
+     *
+     * @param viewer the player opening the view
+     * @param topInventory the top inventory of the view
+     */
+    public void trackView(HumanEntity viewer, Inventory topInventory) {
+        if (topInventory.getHolder(false) instanceof BackpackHolder holder) {
+            openViews.put(viewer.getUniqueId(), holder);
+        } else {
+            openViews.remove(viewer.getUniqueId());
         }
+    }
+
+    /**
+     * Forget the backpack view of a player.
+     *
+     * @param viewer the player whose view closed
+     * @return the holder of the backpack that was open, or null
+     */
+    public BackpackHolder untrackView(HumanEntity viewer) {
+        return openViews.remove(viewer.getUniqueId());
+    }
 
-        return uuids;
+    /**
+     * Get the backpack a player currently has open.
+     *
+     * @param viewer the player
+     * @return the holder of the open backpack, or null if no backpack is open
+     */
+    public BackpackHolder getOpenBackpack(HumanEntity viewer) {
+        return openViews.get(viewer.getUniqueId());
     }
 
     /**
      * Find the UUID for a given inventory instance.
+     * Resolved through the {@link BackpackHolder}, so other inventories are rejected
+     * without looking at the loaded backpacks.
      *
      * @param inventory the inventory to find
      * @return the UUID or null if not found
      */
     @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
     public UUID findInventoryUUID(Inventory inventory) {
-        for (Map.Entry<UUID, Inventory> entry : loadedInventories.entrySet()) {
-            if (entry.getValue().equals(inventory)) {
-                return entry.getKey();
-            }
+        if (inventory == null || !(inventory.getHolder(false) instanceof BackpackHolder holder)) {
+            return null;
         }
-        return null;
+        // A resized backpack leaves its old inventory behind, which is no longer saved
+        UUID backpackUUID = holder.getBackpackUuid();
+        return loadedInventories.get(backpackUUID) == inventory ? backpackUUID : null;
     }
 }
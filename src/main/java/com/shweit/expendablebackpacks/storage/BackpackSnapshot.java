@@ -0,0 +1,195 @@
+package com.shweit.expendablebackpacks.storage;
+
+import java.util.BitSet;
+import java.util.UUID;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Immutable copy of a backpack's contents, handed from the thread that owns the
+ * inventory to the IO thread. The IO thread only ever sees snapshots, never live inventories.
+ *
+ * <p>A snapshot can be a delta: it still holds the full contents, but only the changed
+ * slots were copied and only those need to be written. Unchanged slots share the item
+ * copies of the previous snapshot, which is safe because snapshot items are never modified.
+ */
+public final class BackpackSnapshot {
+
+    private final UUID backpackUuid;
+    private final ItemStack[] contents;
+    private final BitSet changedSlots;
+
+    private BackpackSnapshot(UUID backpackUuid, ItemStack[] contents, BitSet changedSlots) {
+        this.backpackUuid = backpackUuid;
+        this.contents = contents;
+        this.changedSlots = changedSlots;
+    }
+
+    /**
+     * Capture the full contents of an inventory.
+     * Must be called on the thread that owns the inventory. Only item copies are made
+     * here; serialization happens later on the IO thread.
+     *
+     * @param backpackUuid the backpack UUID
+     * @param inventory the inventory to capture
+     * @return the snapshot
+     */
+    public static BackpackSnapshot capture(UUID backpackUuid, Inventory inventory) {
+        return capture(backpackUuid, inventory, null);
+    }
+
+    /**
+     * Capture the contents of an inventory as a delta against a previous snapshot.
+     * Only slots that differ from the previous snapshot are copied. Falls back to a full
+     * snapshot if there is no previous snapshot or the inventory size changed.
+     *
+     * @param backpackUuid the backpack UUID
+     * @param inventory the inventory to capture
+     * @param previous the last captured snapshot of this backpack, or null
+     * @return the snapshot
+     */
+    public static BackpackSnapshot capture(UUID backpackUuid, Inventory inventory,
+                                           BackpackSnapshot previous) {
+        ItemStack[] live = inventory.getContents();
+        ItemStack[] copy = new ItemStack[live.length];
+
+        if (previous == null || previous.contents == null || previous.contents.length != live.length) {
+            for (int i = 0; i < live.length; i++) {
+                if (live[i] != null) {
+                    copy[i] = live[i].clone();
+                }
+            }
+            return new BackpackSnapshot(backpackUuid, copy, null);
+        }
+
+        BitSet changed = new BitSet(live.length);
+        for (int i = 0; i < live.length; i++) {
+            ItemStack before = previous.contents[i];
+            ItemStack now = live[i];
+            if (now == null || now.getType().isAir()) {
+                if (before != null) {
+                    changed.set(i);
+                }
+            } else if (now.equals(before)) {
+                copy[i] = before;
+            } else {
+                copy[i] = now.clone();
+                changed.set(i);
+            }
+        }
+        return new BackpackSnapshot(backpackUuid, copy, changed);
+    }
+
+    /**
+     * Create a full snapshot from contents that are already private copies.
+     *
+     * @param backpackUuid the backpack UUID
+     * @param contents the contents, which must not be modified afterwards
+     * @return the snapshot
+     */
+    public static BackpackSnapshot of(UUID backpackUuid, ItemStack[] contents) {
+        return new BackpackSnapshot(backpackUuid, contents, null);
+    }
+
+    /**
+     * Create a snapshot that deletes the backpack from storage.
+     *
+     * @param backpackUuid the backpack UUID
+     * @return the deletion snapshot
+     */
+    public static BackpackSnapshot deletion(UUID backpackUuid) {
+        return new BackpackSnapshot(backpackUuid, null, null);
+    }
+
+    /**
+     * Combine a snapshot that is still waiting with a newer one, so that writing only the
+     * newer snapshot does not lose the changes of the older one.
+     *
+     * @param older the snapshot waiting to be written
+     * @param newer the newer snapshot of the same backpack
+     * @return the combined snapshot
+     */
+    public static BackpackSnapshot combine(BackpackSnapshot older, BackpackSnapshot newer) {
+        if (newer.isDeletion() || newer.isFull()) {
+            return newer;
+        }
+        if (older.isDeletion() || older.isFull()) {
+            // The older snapshot was never written, so the newer one has to be written in full
+            return new BackpackSnapshot(newer.backpackUuid, newer.contents, null);
+        }
+        BitSet changed = (BitSet) older.changedSlots.clone();
+        changed.or(newer.changedSlots);
+        return new BackpackSnapshot(newer.backpackUuid, newer.contents, changed);
+    }
+
+    /**
+     * Get the backpack UUID.
+     *
+     * @return the backpack UUID
+     */
+    public UUID getBackpackUuid() {
+        return backpackUuid;
+    }
+
+    /**
+     * Check if this snapshot deletes the backpack.
+     *
+     * @return true if the backpack is deleted
+     */
+    public boolean isDeletion() {
+        return contents == null;
+    }
+
+    /**
+     * Check if every slot of this snapshot has to be written.
+     *
+     * @return true if this is a full snapshot
+     */
+    public boolean isFull() {
+        return contents != null && changedSlots == null;
+    }
+
+    /**
+     * Check if this snapshot has nothing to write.
+     *
+     * @return true if this is a delta without changed slots
+     */
+    public boolean isUnchanged() {
+        return changedSlots != null && changedSlots.isEmpty();
+    }
+
+    /**
+     * Get a copy of the captured contents.
+     *
+     * @return the captured contents, or null for a deletion
+     */
+    public ItemStack[] getContents() {
+        if (contents == null) {
+            return null;
+        }
+        ItemStack[] copy = new ItemStack[contents.length];
+        for (int i = 0; i < contents.length; i++) {
+            if (contents[i] != null) {
+                copy[i] = contents[i].clone();
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Write this snapshot to a storage engine.
+     * The captured items are passed without copying, engines never modify them.
+     *
+     * @param storage the storage engine
+     * @throws java.io.IOException if the write fails
+     */
+    void writeTo(BackpackStorage storage) throws java.io.IOException {
+        if (contents == null) {
+            storage.delete(backpackUuid);
+        } else if (changedSlots == null) {
+            storage.store(backpackUuid, contents);
+        } else {
+            storage.storeDelta(backpackUuid, contents, changedSlots);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.shweit.expendablebackpacks.storage;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Storage engine for backpack contents.
+ * Implementations must be safe to call from any thread; the manager only ever
+ * hands them item arrays it no longer mutates.
+ */
+public interface BackpackStorage {
+
+    /**
+     * Get the name of this engine as used in config.yml.
+     *
+     * @return the engine name
+     */
+    String getName();
+
+    /**
+     * Load the contents of a backpack.
+     *
+     * @param backpackUuid the backpack UUID
+     * @return the stored contents, or null if the backpack is not stored
+     * @throws IOException if the backpack cannot be read
+     */
+    ItemStack[] load(UUID backpackUuid) throws IOException;
+
+    /**
+     * Store the contents of a backpack, replacing any previous contents.
+     *
+     * @param backpackUuid the backpack UUID
+     * @param contents the contents to store
+     * @throws IOException if the backpack cannot be written
+     */
+    void store(UUID backpackUuid, ItemStack[] contents) throws IOException;
+
+    /**
+     * Store a change to only some slots of a backpack.
+     * Engines without delta support write the full contents instead.
+     *
+     * @param backpackUuid the backpack UUID
+     * @param contents the full contents after the change
+     * @param changedSlots the slots that changed since the last write
+     * @throws IOException if the backpack cannot be written
+     */
+    default void storeDelta(UUID backpackUuid, ItemStack[] contents, BitSet changedSlots)
+        throws IOException {
+        store(backpackUuid, contents);
+    }
+
+    /**
+     * Delete a backpack from storage.
+     *
+     * @param backpackUuid the backpack UUID
+     * @throws IOException if the backpack cannot be deleted
+     */
+    void delete(UUID backpackUuid) throws IOException;
+
+    /**
+     * Check if a backpack is stored.
+     *
+     * @param backpackUuid the backpack UUID
+     * @return true if the backpack is stored
+     */
+    boolean exists(UUID backpackUuid);
+
+    /**
+     * List every stored backpack UUID.
+     *
+     * @return list of all stored backpack UUIDs
+     * @throws IOException if the storage cannot be listed
+     */
+    List<UUID> keys() throws IOException;
+
+    /**
+     * Make every write so far durable.
+     * Called by the writer after each batch; engines that write whole files can ignore it.
+     *
+     * @throws IOException if pending data cannot be synced
+     */
+    default void sync() throws IOException {
+    }
+
+    /**
+     * Flush and release any resources held by this engine.
+     *
+     * @throws IOException if pending data cannot be written
+     */
+    default void close() throws IOException {
+    }
+
+    /**
+     * Load the contents of a backpack on the given executor.
+     *
+     * @param backpackUuid the backpack UUID
+     * @param executor the executor to run the load on
+     * @return a future completed with the contents, or null if not stored
+     */
+    default CompletableFuture<ItemStack[]> loadAsync(UUID backpackUuid, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return load(backpackUuid);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Store the contents of a backpack on the given executor.
+     *
+     * @param backpackUuid the backpack UUID
+     * @param contents the contents to store
+     * @param executor the executor to run the write on
+     * @return a future completed once the contents are written
+     */
+    default CompletableFuture<Void> storeAsync(UUID backpackUuid, ItemStack[] contents,
+                                               Executor executor) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                store(backpackUuid, contents);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Delete a backpack on the given executor.
+     *
+     * @param backpackUuid the backpack UUID
+     * @param executor the executor to run the delete on
+     * @return a future completed once the backpack is deleted
+     */
+    default CompletableFuture<Void> deleteAsync(UUID backpackUuid, Executor executor) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                delete(backpackUuid);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Check if a backpack is stored on the given executor.
+     *
+     * @param backpackUuid the backpack UUID
+     * @param executor the executor to run the check on
+     * @return a future completed with true if the backpack is stored
+     */
+    default CompletableFuture<Boolean> existsAsync(UUID backpackUuid, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> exists(backpackUuid), executor);
+    }
+
+    /**
+     * List every stored backpack UUID on the given executor.
+     *
+     * @param executor the executor to run the listing on
+     * @return a future completed with all stored backpack UUIDs
+     */
+    default CompletableFuture<List<UUID>> keysAsync(Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return keys();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+}
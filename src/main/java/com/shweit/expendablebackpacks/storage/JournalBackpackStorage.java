@@ -0,0 +1,634 @@
+package com.shweit.expendablebackpacks.storage;
+
+import com.shweit.expendablebackpacks.storage.codec.BackpackCodec;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Append-only storage engine. Every store or delete appends a framed, checksummed record
+ * to the active segment and an in-memory index points at the latest record per backpack.
+ *
+ * <p>Frame layout (big endian):
+ * <pre>
+ * int   magic
+ * int   body length
+ * int   CRC32 of the body
+ * body: long uuid msb, long uuid lsb, long version, byte type, payload
+ * </pre>
+ * A delta record only carries the slots that changed since the previous record. The index
+ * keeps the chain of the last full record plus its deltas, and once a chain grows past the
+ * fold limit the next change is written as a full record again.
+ *
+ * <p>On startup all segments are replayed in order to rebuild the index; a torn or corrupt
+ * tail is cut off, so a crash loses at most the records that were not synced yet.
+ * Once the share of dead bytes passes the compaction threshold, a background compaction
+ * copies all live records into a fresh segment and deletes the old ones. Loads and writes
+ * only wait for the compaction while it swaps the segments, not while it copies.
+ *
+ * <p>Loads share a read lock and run in parallel, writes take the write lock. Payloads of
+ * full records are encoded before the lock is taken.
+ */
+public class JournalBackpackStorage implements BackpackStorage {
+
+    private static final int MAGIC = 0x45424A4C;
+    private static final int HEADER_SIZE = 12;
+    private static final int BODY_PREFIX_SIZE = 25;
+    private static final byte TYPE_STORE = 0;
+    private static final byte TYPE_DELETE = 1;
+    private static final byte TYPE_DELTA = 2;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String COMPACT_SUFFIX = ".compact";
+    private static final long MIN_COMPACTION_SIZE = 1024L * 1024L;
+
+    private final Path root;
+    private final BackpackCodec codec;
+    private final long segmentSize;
+    private final double compactionThreshold;
+    private final int foldAfter;
+    private final Executor compactor;
+    private final Logger logger;
+
+    private final Map<UUID, List<RecordLocation>> index;
+    private final TreeMap<Integer, FileChannel> segments;
+    private final Set<Integer> unsynced;
+    private final ReentrantReadWriteLock lock;
+    private int activeSegment;
+    private long version;
+    private long totalBytes;
+    private long liveBytes;
+    private boolean compactionScheduled;
+    private boolean compacting;
+
+    /**
+     * Location of the latest record of a backpack.
+     *
+     * @param segment the segment id
+     * @param offset the offset of the frame in the segment
+     * @param length the total frame length
+     */
+    private record RecordLocation(int segment, long offset, int length) {
+    }
+
+    /**
+     * Open a journal in the given directory and replay it.
+     *
+     * @param root the journal directory
+     * @param codec the record format of the payloads
+     * @param segmentSize the size after which a new segment is started, in bytes
+     * @param compactionThreshold the dead byte ratio that triggers a compaction
+     * @param foldAfter the number of deltas after which a full record is written again
+     * @param compactor the executor running background compactions
+     * @param logger the logger for replay and compaction messages
+     * @throws IOException if the journal cannot be opened or replayed
+     */
+    public JournalBackpackStorage(File root, BackpackCodec codec, long segmentSize,
+                                  double compactionThreshold, int foldAfter,
+                                  Executor compactor, Logger logger) throws IOException {
+        this.root = root.toPath();
+        this.codec = codec;
+        this.segmentSize = segmentSize;
+        this.compactionThreshold = compactionThreshold;
+        this.foldAfter = foldAfter;
+        this.compactor = compactor;
+        this.logger = logger;
+        this.index = new HashMap<>();
+        this.segments = new TreeMap<>();
+        this.unsynced = new TreeSet<>();
+        this.lock = new ReentrantReadWriteLock();
+
+        Files.createDirectories(this.root);
+        replay();
+    }
+
+    @Override
+    public String getName() {
+        return "journal";
+    }
+
+    /**
+     * Get the file of a segment.
+     *
+     * @param segment the segment id
+     * @return the segment path
+     */
+    private Path segmentFile(int segment) {
+        return root.resolve(SEGMENT_PREFIX + segment + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Open a segment for reading and appending.
+     *
+     * @param segment the segment id
+     * @return the segment channel
+     * @throws IOException if the segment cannot be opened
+     */
+    private FileChannel openSegment(int segment) throws IOException {
+        return FileChannel.open(segmentFile(segment), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Replay every segment in order to rebuild the index.
+     *
+     * @throws IOException if a segment cannot be read
+     */
+    private void replay() throws IOException {
+        // Left behind by a compaction that did not finish, the old segments are still complete
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root, "*" + COMPACT_SUFFIX)) {
+            for (Path file : files) {
+                logger.warning("Deleting unfinished journal compaction " + file.getFileName());
+                Files.delete(file);
+            }
+        }
+
+        List<Integer> ids = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root,
+            SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    ids.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Skip files that are not journal segments
+                }
+            }
+        }
+        ids.sort(null);
+
+        for (int segment : ids) {
+            FileChannel channel = openSegment(segment);
+            segments.put(segment, channel);
+            replaySegment(segment, channel);
+        }
+
+        if (segments.isEmpty()) {
+            activeSegment = 0;
+            segments.put(activeSegment, openSegment(activeSegment));
+        } else {
+            activeSegment = segments.lastKey();
+        }
+    }
+
+    /**
+     * Replay a single segment, cutting off a torn or corrupt tail.
+     *
+     * @param segment the segment id
+     * @param channel the segment channel
+     * @throws IOException if the segment cannot be read
+     */
+    private void replaySegment(int segment, FileChannel channel) throws IOException {
+        long size = channel.size();
+        long offset = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+        while (offset + HEADER_SIZE <= size) {
+            header.clear();
+            channel.read(header, offset);
+            header.flip();
+            int magic = header.getInt();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (magic != MAGIC || length < BODY_PREFIX_SIZE || offset + HEADER_SIZE + length > size) {
+                break;
+            }
+
+            ByteBuffer body = ByteBuffer.allocate(length);
+            channel.read(body, offset + HEADER_SIZE);
+            body.flip();
+            if (checksum(body) != checksum) {
+                break;
+            }
+
+            UUID backpackUuid = new UUID(body.getLong(), body.getLong());
+            version = Math.max(version, body.getLong() + 1);
+            byte type = body.get();
+
+            int frameLength = HEADER_SIZE + length;
+            RecordLocation location = new RecordLocation(segment, offset, frameLength);
+            if (type == TYPE_DELTA) {
+                List<RecordLocation> chain = index.get(backpackUuid);
+                if (chain != null) {
+                    chain.add(location);
+                    liveBytes += frameLength;
+                }
+            } else {
+                releaseChain(index.remove(backpackUuid));
+                if (type == TYPE_STORE) {
+                    List<RecordLocation> chain = new ArrayList<>();
+                    chain.add(location);
+                    index.put(backpackUuid, chain);
+                    liveBytes += frameLength;
+                }
+            }
+            offset += frameLength;
+        }
+
+        if (offset < size) {
+            logger.warning("Discarding " + (size - offset) + " corrupt bytes at the end of "
+                + segmentFile(segment).getFileName());
+            channel.truncate(offset);
+        }
+        totalBytes += offset;
+    }
+
+    /**
+     * Subtract a replaced record chain from the live byte count.
+     *
+     * @param chain the replaced chain, or null
+     */
+    private void releaseChain(List<RecordLocation> chain) {
+        if (chain == null) {
+            return;
+        }
+        for (RecordLocation location : chain) {
+            liveBytes -= location.length();
+        }
+    }
+
+    /**
+     * Compute the CRC32 of the remaining bytes of a buffer without moving its position.
+     *
+     * @param body the buffer
+     * @return the checksum
+     */
+    private int checksum(ByteBuffer body) {
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Append a record to the active segment.
+     *
+     * @param backpackUuid the backpack UUID
+     * @param type the record type
+     * @param payload the encoded contents, empty for deletions
+     * @return the location of the appended record
+     * @throws IOException if the record cannot be written
+     */
+    private RecordLocation append(UUID backpackUuid, byte type, byte[] payload) throws IOException {
+        FileChannel channel = segments.get(activeSegment);
+        if (channel.size() >= segmentSize) {
+            activeSegment++;
+            channel = openSegment(activeSegment);
+            segments.put(activeSegment, channel);
+        }
+
+        int length = BODY_PREFIX_SIZE + payload.length;
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + length);
+        frame.position(HEADER_SIZE);
+        frame.putLong(backpackUuid.getMostSignificantBits());
+        frame.putLong(backpackUuid.getLeastSignificantBits());
+        frame.putLong(version++);
+        frame.put(type);
+        frame.put(payload);
+        frame.flip();
+        frame.position(HEADER_SIZE);
+        int checksum = checksum(frame);
+        frame.position(0);
+        frame.putInt(MAGIC).putInt(length).putInt(checksum);
+        frame.position(0);
+
+        long offset = channel.size();
+        while (frame.hasRemaining()) {
+            channel.write(frame, offset + frame.position());
+        }
+        totalBytes += frame.limit();
+        // A roll mid-batch leaves records in the previous segment, sync() forces both
+        unsynced.add(activeSegment);
+        return new RecordLocation(activeSegment, offset, frame.limit());
+    }
+
+    /**
+     * Read the body of a record.
+     *
+     * @param location the record location
+     * @return the record body, positioned at the payload
+     * @throws IOException if the record cannot be read or is corrupt
+     */
+    private ByteBuffer readPayload(RecordLocation location) throws IOException {
+        FileChannel channel = segments.get(location.segment());
+        ByteBuffer body = ByteBuffer.allocate(location.length() - HEADER_SIZE);
+        while (body.hasRemaining()) {
+            if (channel.read(body, location.offset() + HEADER_SIZE + body.position()) < 0) {
+                throw new IOException("Unexpected end of journal segment " + location.segment());
+            }
+        }
+        body.flip();
+        body.position(BODY_PREFIX_SIZE);
+        return body;
+    }
+
+    @Override
+    public ItemStack[] load(UUID backpackUuid) throws IOException {
+        lock.readLock().lock();
+        try {
+            List<RecordLocation> chain = index.get(backpackUuid);
+            if (chain == null) {
+                return null;
+            }
+            ItemStack[] contents = codec.decode(readPayload(chain.get(0)));
+            for (int i = 1; i < chain.size(); i++) {
+                contents = codec.applyDelta(readPayload(chain.get(i)), contents);
+            }
+            return contents;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void store(UUID backpackUuid, ItemStack[] contents) throws IOException {
+        // Encoded before taking the lock, so stores of different backpacks encode in parallel
+        byte[] payload = codec.encode(contents);
+        lock.writeLock().lock();
+        try {
+            RecordLocation location = append(backpackUuid, TYPE_STORE, payload);
+            List<RecordLocation> chain = new ArrayList<>();
+            chain.add(location);
+            releaseChain(index.put(backpackUuid, chain));
+            liveBytes += location.length();
+            scheduleCompactionIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void storeDelta(UUID backpackUuid, ItemStack[] contents,
+                           BitSet changedSlots) throws IOException {
+        lock.writeLock().lock();
+        try {
+            List<RecordLocation> chain = index.get(backpackUuid);
+            if (chain == null || chain.size() > foldAfter) {
+                // No base to apply the delta to, or the chain got long: fold into a full record
+                store(backpackUuid, contents);
+                return;
+            }
+
+            RecordLocation location = append(backpackUuid, TYPE_DELTA,
+                codec.encodeDelta(contents, changedSlots));
+            chain.add(location);
+            liveBytes += location.length();
+            scheduleCompactionIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(UUID backpackUuid) throws IOException {
+        lock.writeLock().lock();
+        try {
+            List<RecordLocation> previous = index.remove(backpackUuid);
+            if (previous == null) {
+                return;
+            }
+            releaseChain(previous);
+            append(backpackUuid, TYPE_DELETE, new byte[0]);
+            scheduleCompactionIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean exists(UUID backpackUuid) {
+        lock.readLock().lock();
+        try {
+            return index.containsKey(backpackUuid);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<UUID> keys() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(index.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void sync() throws IOException {
+        lock.writeLock().lock();
+        try {
+            // Forced in order, a delta never becomes durable before the segment holding its base
+            for (Integer segment : new ArrayList<>(unsynced)) {
+                FileChannel channel = segments.get(segment);
+                if (channel != null) {
+                    channel.force(false);
+                }
+                unsynced.remove(segment);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (FileChannel channel : segments.values()) {
+                channel.force(true);
+                channel.close();
+            }
+            segments.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Schedule a background compaction once enough of the journal is dead.
+     */
+    private void scheduleCompactionIfNeeded() {
+        if (compactionScheduled || totalBytes < MIN_COMPACTION_SIZE) {
+            return;
+        }
+        double garbageRatio = 1.0 - (double) liveBytes / totalBytes;
+        if (garbageRatio < compactionThreshold) {
+            return;
+        }
+
+        compactionScheduled = true;
+        try {
+            compactor.execute(() -> {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    logger.log(Level.SEVERE, "Could not compact backpack journal!", e);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Compactor no longer accepts tasks, try again on the next write
+            compactionScheduled = false;
+        }
+    }
+
+    /**
+     * Copy every live record into a fresh segment and delete the old segments.
+     * The new segment is fully written and synced before it replaces the old ones.
+     *
+     * <p>The journal is only locked to take a copy of the index and to swap the segments
+     * at the end. Writes keep going while the records are copied: they are appended to a
+     * segment after the compacted one, so a replay still applies them last, and the swap
+     * keeps every record that was appended meanwhile.
+     *
+     * @throws IOException if the compaction fails; the old segments stay untouched
+     */
+    public void compact() throws IOException {
+        int source;
+        int target;
+        Map<UUID, List<RecordLocation>> live = new HashMap<>();
+        Map<Integer, FileChannel> sources;
+        lock.writeLock().lock();
+        try {
+            if (compacting) {
+                return;
+            }
+            if (segments.isEmpty()) {
+                compactionScheduled = false;
+                return;
+            }
+
+            source = activeSegment;
+            target = source + 1;
+            segments.put(source + 2, openSegment(source + 2));
+            activeSegment = source + 2;
+            compacting = true;
+
+            for (Map.Entry<UUID, List<RecordLocation>> entry : index.entrySet()) {
+                live.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+            }
+            sources = new HashMap<>(segments.headMap(source, true));
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Path temp = root.resolve(SEGMENT_PREFIX + target + SEGMENT_SUFFIX + COMPACT_SUFFIX);
+        try {
+            Map<RecordLocation, RecordLocation> relocated = new HashMap<>();
+            long offset = 0;
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                for (List<RecordLocation> chain : live.values()) {
+                    // Copy the full record and its deltas in order, so replay rebuilds the same chain
+                    for (RecordLocation location : chain) {
+                        FileChannel in = sources.get(location.segment());
+                        long copied = 0;
+                        while (copied < location.length()) {
+                            copied += in.transferTo(location.offset() + copied,
+                                location.length() - copied, out);
+                        }
+                        relocated.put(location, new RecordLocation(target, offset, location.length()));
+                        offset += location.length();
+                    }
+                }
+                out.force(true);
+            }
+
+            lock.writeLock().lock();
+            try {
+                if (segments.isEmpty()) {
+                    // Closed while copying
+                    Files.deleteIfExists(temp);
+                    return;
+                }
+                swap(temp, source, target, relocated, offset);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        } finally {
+            lock.writeLock().lock();
+            try {
+                compacting = false;
+                compactionScheduled = false;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Replace the compacted segments with the compacted copy.
+     * Must be called while holding the journal's lock.
+     *
+     * @param temp the written compacted segment
+     * @param source the last segment that was compacted
+     * @param target the id of the compacted segment
+     * @param relocated the new location of every copied record
+     * @param compactedSize the size of the compacted segment
+     * @throws IOException if the segments cannot be swapped
+     */
+    private void swap(Path temp, int source, int target,
+                      Map<RecordLocation, RecordLocation> relocated,
+                      long compactedSize) throws IOException {
+        try {
+            Files.move(temp, segmentFile(target), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, segmentFile(target));
+        }
+        segments.put(target, openSegment(target));
+
+        // Records in the compacted segments were all copied, newer ones stay where they are
+        for (Map.Entry<UUID, List<RecordLocation>> entry : index.entrySet()) {
+            List<RecordLocation> chain = new ArrayList<>(entry.getValue().size());
+            for (RecordLocation location : entry.getValue()) {
+                chain.add(location.segment() <= source ? relocated.get(location) : location);
+            }
+            entry.setValue(chain);
+        }
+
+        long before = totalBytes;
+        List<Integer> compacted = new ArrayList<>(segments.headMap(source, true).keySet());
+        for (int segment : compacted) {
+            segments.remove(segment).close();
+            Files.deleteIfExists(segmentFile(segment));
+        }
+
+        totalBytes = compactedSize;
+        for (FileChannel channel : segments.tailMap(target, false).values()) {
+            totalBytes += channel.size();
+        }
+        liveBytes = 0;
+        for (List<RecordLocation> chain : index.values()) {
+            for (RecordLocation location : chain) {
+                liveBytes += location.length();
+            }
+        }
+        logger.info("Compacted backpack journal from " + before + " to " + totalBytes + " bytes");
+    }
+}
@@ -0,0 +1,522 @@
+package com.shweit.expendablebackpacks.storage;
+
+import com.shweit.expendablebackpacks.storage.codec.BackpackCodec;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Storage engine keeping backpack records in fixed-size memory-mapped segment files.
+ * A UUID index points at (segment, offset, length) and reads hand a slice of the mapping
+ * straight to the codec, so loading a cold backpack is an index lookup plus a decode.
+ *
+ * <p>Segments are carved into slots whose capacity is a power of two (64 bytes minimum).
+ * Slot layout (big endian):
+ * <pre>
+ * int   magic (live or free)
+ * int   slot capacity
+ * long  uuid msb
+ * long  uuid lsb
+ * long  version
+ * int   payload length
+ * int   CRC32 of the payload
+ * ...   padding up to 48 bytes, then the payload
+ * </pre>
+ * A store always writes a fresh slot. Dirty pages of a mapping reach the disk in no
+ * particular order, so the old slot is only marked free, and handed out again, by the
+ * {@link #sync()} after the one that forced the new record. Until then both copies are
+ * live on disk. On startup a slot whose payload fails its checksum is ignored and the
+ * highest remaining version wins, so a torn write falls back to the previous record.
+ *
+ * <p>Every segment starts with a 64 byte header holding a magic and the segment size. The
+ * size stored in the first segment wins over the configured one when the store is reopened,
+ * so changing the config never cuts existing segments short. When a segment is full, its
+ * unused end is carved into free slots instead of being left behind.
+ *
+ * <p>Loads only read the mappings at absolute offsets, so they share a read lock and run in
+ * parallel. Stores encode their payload before taking the write lock.
+ */
+public class MappedBackpackStorage implements BackpackStorage {
+
+    private static final int MAGIC_LIVE = 0x45424D4C;
+    private static final int MAGIC_FREE = 0x45424D46;
+    private static final int MAGIC_SEGMENT = 0x45424D53;
+    private static final int HEADER_SIZE = 48;
+    private static final int MIN_SLOT = 64;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private final Path root;
+    private final BackpackCodec codec;
+    private final int segmentSize;
+    private final Logger logger;
+
+    private final Map<UUID, Slot> index;
+    private final List<MappedByteBuffer> segments;
+    private final List<ArrayDeque<Slot>> freeSlots;
+    private final BitSet dirtySegments;
+    private final List<Slot> pendingFrees;
+    private final ReentrantReadWriteLock lock;
+    private int top;
+    private long version;
+
+    /**
+     * A slot inside a segment.
+     *
+     * @param segment the segment id
+     * @param offset the offset of the slot header
+     * @param capacity the slot capacity including the header
+     * @param length the payload length
+     */
+    private record Slot(int segment, int offset, int capacity, int length) {
+    }
+
+    /**
+     * Open the segment store in the given directory and rebuild the index.
+     *
+     * @param root the segment directory
+     * @param codec the record format of the payloads
+     * @param segmentSize the size of new segments, in bytes; existing segments keep their size
+     * @param logger the logger for recovery messages
+     * @throws IOException if the segments cannot be mapped
+     */
+    public MappedBackpackStorage(File root, BackpackCodec codec, int segmentSize,
+                                 Logger logger) throws IOException {
+        this.root = root.toPath();
+        this.codec = codec;
+        this.logger = logger;
+        this.index = new HashMap<>();
+        this.segments = new ArrayList<>();
+        this.freeSlots = new ArrayList<>();
+        this.dirtySegments = new BitSet();
+        this.pendingFrees = new ArrayList<>();
+        this.lock = new ReentrantReadWriteLock();
+
+        Files.createDirectories(this.root);
+        this.segmentSize = storedSegmentSize(
+            Integer.highestOneBit(Math.max(segmentSize, 1024 * 1024)));
+        for (int size = MIN_SLOT; size > 0 && size <= this.segmentSize; size <<= 1) {
+            freeSlots.add(new ArrayDeque<>());
+        }
+        recover();
+    }
+
+    @Override
+    public String getName() {
+        return "mmap";
+    }
+
+    /**
+     * Get the file of a segment.
+     *
+     * @param segment the segment id
+     * @return the segment path
+     */
+    private Path segmentFile(int segment) {
+        return root.resolve(SEGMENT_PREFIX + segment + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Get the segment size of an existing store, or the configured size for a new one.
+     *
+     * @param configured the configured segment size
+     * @return the segment size to use
+     * @throws IOException if the first segment cannot be read
+     */
+    private int storedSegmentSize(int configured) throws IOException {
+        Path first = segmentFile(0);
+        if (!Files.exists(first)) {
+            return configured;
+        }
+
+        int stored;
+        try (FileChannel channel = FileChannel.open(first, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() != 8 || header.getInt(0) != MAGIC_SEGMENT) {
+                throw new IOException(first.getFileName() + " is not a backpack segment");
+            }
+            stored = header.getInt(4);
+        }
+        if (stored < 1024 * 1024 || Integer.bitCount(stored) != 1) {
+            throw new IOException("Backpack segment " + first.getFileName()
+                + " has an invalid size of " + stored + " bytes");
+        }
+        if (stored != configured) {
+            logger.info("Keeping the segment size of the existing backpack segments ("
+                + (stored / 1024 / 1024) + " MB) instead of the configured "
+                + (configured / 1024 / 1024) + " MB");
+        }
+        return stored;
+    }
+
+    /**
+     * Map a segment file, creating it at full size with a header if needed.
+     *
+     * @param segment the segment id
+     * @return the mapped segment
+     * @throws IOException if the segment cannot be mapped
+     */
+    private MappedByteBuffer mapSegment(int segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentFile(segment), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            boolean created = channel.size() == 0;
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            if (created) {
+                buffer.putInt(4, segmentSize);
+                buffer.putInt(0, MAGIC_SEGMENT);
+                dirtySegments.set(segment);
+            } else if (buffer.getInt(0) != MAGIC_SEGMENT) {
+                throw new IOException(segmentFile(segment).getFileName() + " is not a backpack segment");
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * Scan every segment to rebuild the index and the free lists.
+     *
+     * @throws IOException if a segment cannot be mapped
+     */
+    private void recover() throws IOException {
+        for (int segment = 0; Files.exists(segmentFile(segment)); segment++) {
+            if (segment > 0) {
+                // Only the last segment is appended to, the end of a full one is free space
+                reclaimTail(segment - 1, top);
+            }
+            MappedByteBuffer buffer = mapSegment(segment);
+            segments.add(buffer);
+            top = scanSegment(segment, buffer);
+        }
+        if (segments.isEmpty()) {
+            segments.add(mapSegment(0));
+            top = MIN_SLOT;
+        }
+    }
+
+    /**
+     * Scan a single segment.
+     *
+     * @param segment the segment id
+     * @param buffer the mapped segment
+     * @return the offset after the last slot
+     */
+    private int scanSegment(int segment, MappedByteBuffer buffer) {
+        // Slots start after the segment header
+        int offset = MIN_SLOT;
+        while (offset + HEADER_SIZE <= segmentSize) {
+            int magic = buffer.getInt(offset);
+            int capacity = buffer.getInt(offset + 4);
+            if (magic != MAGIC_LIVE && magic != MAGIC_FREE
+                || capacity < MIN_SLOT || Integer.bitCount(capacity) != 1
+                || offset + capacity > segmentSize) {
+                // Never written (or torn before the magic), everything after is unused
+                break;
+            }
+
+            if (magic == MAGIC_FREE) {
+                release(new Slot(segment, offset, capacity, 0));
+            } else {
+                UUID backpackUuid = new UUID(buffer.getLong(offset + 8), buffer.getLong(offset + 16));
+                long slotVersion = buffer.getLong(offset + 24);
+                Slot slot = new Slot(segment, offset, capacity, buffer.getInt(offset + 32));
+                version = Math.max(version, slotVersion + 1);
+                if (!isIntact(buffer, slot)) {
+                    // Torn by a crash before it was synced, the previous copy is still live
+                    logger.warning("Ignoring torn backpack record of " + backpackUuid
+                        + " in " + segmentFile(segment).getFileName());
+                    free(slot);
+                    offset += capacity;
+                    continue;
+                }
+
+                Slot existing = index.get(backpackUuid);
+                if (existing == null) {
+                    index.put(backpackUuid, slot);
+                } else if (versionOf(existing) < slotVersion) {
+                    index.put(backpackUuid, slot);
+                    free(existing);
+                } else {
+                    free(slot);
+                }
+            }
+            offset += capacity;
+        }
+        return offset;
+    }
+
+    /**
+     * Check the payload of a live slot against its checksum.
+     *
+     * @param buffer the mapped segment of the slot
+     * @param slot the slot
+     * @return true if the payload is intact
+     */
+    private boolean isIntact(MappedByteBuffer buffer, Slot slot) {
+        if (slot.length() < 0 || HEADER_SIZE + slot.length() > slot.capacity()) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(slot.offset() + HEADER_SIZE, slot.length()));
+        return (int) crc.getValue() == buffer.getInt(slot.offset() + 36);
+    }
+
+    /**
+     * Read the version of a live slot.
+     *
+     * @param slot the slot
+     * @return the record version
+     */
+    private long versionOf(Slot slot) {
+        return segments.get(slot.segment()).getLong(slot.offset() + 24);
+    }
+
+    /**
+     * Get the free list index for a slot capacity.
+     *
+     * @param capacity the slot capacity, a power of two
+     * @return the size class
+     */
+    private int sizeClass(int capacity) {
+        return Integer.numberOfTrailingZeros(capacity) - Integer.numberOfTrailingZeros(MIN_SLOT);
+    }
+
+    /**
+     * Allocate a slot for a record, reusing a free slot of the same size class if possible.
+     *
+     * @param recordSize the header plus payload size
+     * @return the allocated slot, with a length of zero
+     * @throws IOException if the record does not fit into a segment
+     */
+    private Slot allocate(int recordSize) throws IOException {
+        int capacity = Math.max(MIN_SLOT, Integer.highestOneBit(recordSize - 1) << 1);
+        if (capacity > segmentSize) {
+            throw new IOException("Backpack record of " + recordSize
+                + " bytes does not fit into a segment");
+        }
+
+        Slot free = freeSlots.get(sizeClass(capacity)).poll();
+        if (free != null) {
+            return free;
+        }
+
+        if (top + capacity > segmentSize) {
+            reclaimTail(segments.size() - 1, top);
+            segments.add(mapSegment(segments.size()));
+            top = MIN_SLOT;
+        }
+        Slot slot = new Slot(segments.size() - 1, top, capacity, 0);
+        top += capacity;
+        return slot;
+    }
+
+    /**
+     * Carve the unused end of a segment into free slots, largest first.
+     * Slot capacities are powers of two of at least 64 bytes and segments start with a
+     * 64 byte header, so the end of a segment is always a multiple of 64 bytes.
+     *
+     * @param segment the segment id
+     * @param from the offset after the last slot
+     */
+    private void reclaimTail(int segment, int from) {
+        MappedByteBuffer buffer = segments.get(segment);
+        int offset = from;
+        while (segmentSize - offset >= MIN_SLOT) {
+            int capacity = Integer.highestOneBit(segmentSize - offset);
+            buffer.putInt(offset + 4, capacity);
+            free(new Slot(segment, offset, capacity, 0));
+            offset += capacity;
+        }
+    }
+
+    /**
+     * Fail if the store was closed.
+     *
+     * @throws IOException if the store was closed
+     */
+    private void ensureOpen() throws IOException {
+        if (segments.isEmpty()) {
+            throw new IOException("Backpack segments are closed");
+        }
+    }
+
+    /**
+     * Mark a slot free on disk and return it to its free list.
+     *
+     * @param slot the slot to free
+     */
+    private void free(Slot slot) {
+        segments.get(slot.segment()).putInt(slot.offset(), MAGIC_FREE);
+        dirtySegments.set(slot.segment());
+        release(slot);
+    }
+
+    /**
+     * Return a slot to its free list without touching the disk.
+     *
+     * @param slot the free slot
+     */
+    private void release(Slot slot) {
+        freeSlots.get(sizeClass(slot.capacity())).push(
+            new Slot(slot.segment(), slot.offset(), slot.capacity(), 0));
+    }
+
+    @Override
+    public ItemStack[] load(UUID backpackUuid) throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            Slot slot = index.get(backpackUuid);
+            if (slot == null) {
+                return null;
+            }
+
+            MappedByteBuffer buffer = segments.get(slot.segment());
+            if (!isIntact(buffer, slot)) {
+                throw new IOException("Corrupt backpack record " + backpackUuid);
+            }
+            return codec.decode(buffer.slice(slot.offset() + HEADER_SIZE, slot.length()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void store(UUID backpackUuid, ItemStack[] contents) throws IOException {
+        // Encoded before taking the lock, so stores of different backpacks encode in parallel
+        byte[] payload = codec.encode(contents);
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            Slot slot = allocate(HEADER_SIZE + payload.length);
+            MappedByteBuffer buffer = segments.get(slot.segment());
+            int offset = slot.offset();
+
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            buffer.putInt(offset + 4, slot.capacity());
+            buffer.putLong(offset + 8, backpackUuid.getMostSignificantBits());
+            buffer.putLong(offset + 16, backpackUuid.getLeastSignificantBits());
+            buffer.putLong(offset + 24, version++);
+            buffer.putInt(offset + 32, payload.length);
+            buffer.putInt(offset + 36, (int) crc.getValue());
+            buffer.put(offset + HEADER_SIZE, payload);
+            buffer.putInt(offset, MAGIC_LIVE);
+            dirtySegments.set(slot.segment());
+
+            // The old copy stays live on disk until the new one was forced by sync()
+            Slot previous = index.put(backpackUuid,
+                new Slot(slot.segment(), offset, slot.capacity(), payload.length));
+            if (previous != null) {
+                pendingFrees.add(previous);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(UUID backpackUuid) throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            Slot previous = index.remove(backpackUuid);
+            if (previous != null) {
+                pendingFrees.add(previous);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean exists(UUID backpackUuid) {
+        lock.readLock().lock();
+        try {
+            return index.containsKey(backpackUuid);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<UUID> keys() throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            return new ArrayList<>(index.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Force new records to disk, then free the slots they replaced and force those as well.
+     * Freed slots are only reused after this, so a replaced record is never overwritten
+     * before its replacement is durable.
+     */
+    @Override
+    public void sync() {
+        lock.writeLock().lock();
+        try {
+            forceDirty();
+            if (pendingFrees.isEmpty()) {
+                return;
+            }
+            pendingFrees.forEach(this::free);
+            pendingFrees.clear();
+            forceDirty();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Force every segment changed since the last force.
+     */
+    private void forceDirty() {
+        for (int segment = dirtySegments.nextSetBit(0); segment >= 0;
+             segment = dirtySegments.nextSetBit(segment + 1)) {
+            segments.get(segment).force();
+        }
+        dirtySegments.clear();
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (segments.isEmpty()) {
+                return;
+            }
+            sync();
+            logger.info("Closed " + segments.size() + " backpack segments holding "
+                + index.size() + " backpacks");
+
+            // Drop every reference to the mappings, the garbage collector unmaps them
+            segments.clear();
+            index.clear();
+            freeSlots.forEach(ArrayDeque::clear);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.shweit.expendablebackpacks.storage;
+
+import com.shweit.expendablebackpacks.storage.codec.BackpackCodec;
+import com.shweit.expendablebackpacks.storage.codec.BinaryBackpackCodec;
+import com.shweit.expendablebackpacks.storage.codec.YamlBackpackCodec;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Storage engine keeping every backpack in its own file, spread over hashed subdirectories.
+ * Layout: {@code backpacks/<first two hex digits of the UUID>/<uuid><codec extension>}.
+ * Saving a backpack only rewrites its own shard, so the cost of a save depends
+ * on the size of that backpack and not on the total number of backpacks.
+ *
+ * <p>Shards written in the other record format (for example before storage.format was
+ * changed) are still read. They are replaced by a shard in the current format on the
+ * next save of that backpack.
+ */
+public class ShardedBackpackStorage implements BackpackStorage {
+
+    private final Path root;
+    private final BackpackCodec codec;
+    private final String extension;
+    private final List<BackpackCodec> fallbackCodecs;
+    private final Set<Path> dirtyDirectories;
+
+    /**
+     * Create a new sharded storage rooted at the given directory.
+     *
+     * @param root the directory holding the shard folders
+     * @param codec the record format of the shard files
+     */
+    public ShardedBackpackStorage(File root, BackpackCodec codec) {
+        this.root = root.toPath();
+        this.codec = codec;
+        this.extension = codec.getExtension();
+        this.dirtyDirectories = ConcurrentHashMap.newKeySet();
+        this.fallbackCodecs = new ArrayList<>();
+        for (BackpackCodec other : List.of(new BinaryBackpackCodec(), new YamlBackpackCodec())) {
+            if (!other.getExtension().equals(extension)) {
+                fallbackCodecs.add(other);
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "sharded";
+    }
+
+    /**
+     * Get the shard file for a backpack UUID.
+     *
+     * @param backpackUuid the backpack UUID
+     * @return the path of the shard file
+     */
+    private Path shardFile(UUID backpackUuid) {
+        return shardFile(backpackUuid, extension);
+    }
+
+    /**
+     * Get the shard file for a backpack UUID in the given record format.
+     *
+     * @param backpackUuid the backpack UUID
+     * @param fileExtension the extension of the record format
+     * @return the path of the shard file
+     */
+    private Path shardFile(UUID backpackUuid, String fileExtension) {
+        String name = backpackUuid.toString();
+        return root.resolve(name.substring(0, 2)).resolve(name + fileExtension);
+    }
+
+    @Override
+    public ItemStack[] load(UUID backpackUuid) throws IOException {
+        Path file = shardFile(backpackUuid);
+        if (Files.exists(file)) {
+            return decode(codec, file);
+        }
+
+        // Shard written before the record format was changed
+        for (BackpackCodec fallback : fallbackCodecs) {
+            Path fallbackFile = shardFile(backpackUuid, fallback.getExtension());
+            if (Files.exists(fallbackFile)) {
+                return decode(fallback, fallbackFile);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Read and decode a shard file.
+     *
+     * @param format the record format of the file
+     * @param file the shard file
+     * @return the decoded contents
+     * @throws IOException if the shard cannot be read
+     */
+    private ItemStack[] decode(BackpackCodec format, Path file) throws IOException {
+        try {
+            return format.decode(ByteBuffer.wrap(Files.readAllBytes(file)));
+        } catch (IOException e) {
+            throw new IOException("Could not read backpack shard " + file, e);
+        }
+    }
+
+    /**
+     * Store the contents of a backpack.
+     * The shard is written to a temporary file and forced to disk, then moved in place,
+     * so a crash mid-write never leaves a truncated backpack behind. The move itself is
+     * made durable by {@link #sync()}.
+     *
+     * @param backpackUuid the backpack UUID
+     * @param contents the contents to store
+     * @throws IOException if the shard cannot be written
+     */
+    @Override
+    public void store(UUID backpackUuid, ItemStack[] contents) throws IOException {
+        Path file = shardFile(backpackUuid);
+        Files.createDirectories(file.getParent());
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer record = ByteBuffer.wrap(codec.encode(contents));
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            channel.force(true);
+        }
+        dirtyDirectories.add(file.getParent());
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        deleteFallbacks(backpackUuid);
+    }
+
+    @Override
+    public void delete(UUID backpackUuid) throws IOException {
+        Path file = shardFile(backpackUuid);
+        Files.deleteIfExists(file);
+        deleteFallbacks(backpackUuid);
+        dirtyDirectories.add(file.getParent());
+    }
+
+    /**
+     * Force the shard directories changed since the last sync, so renames and deletes
+     * survive a power loss.
+     *
+     * @throws IOException if a directory cannot be synced
+     */
+    @Override
+    public void sync() throws IOException {
+        for (Path directory : dirtyDirectories) {
+            dirtyDirectories.remove(directory);
+            try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (IOException e) {
+                // Windows cannot open directories, its renames are durable on their own
+                if (!System.getProperty("os.name", "").startsWith("Windows")) {
+                    dirtyDirectories.add(directory);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Delete shards of a backpack written in another record format.
+     *
+     * @param backpackUuid the backpack UUID
+     * @throws IOException if a shard cannot be deleted
+     */
+    private void deleteFallbacks(UUID backpackUuid) throws IOException {
+        for (BackpackCodec fallback : fallbackCodecs) {
+            Files.deleteIfExists(shardFile(backpackUuid, fallback.getExtension()));
+        }
+    }
+
+    @Override
+    public boolean exists(UUID backpackUuid) {
+        if (Files.exists(shardFile(backpackUuid))) {
+            return true;
+        }
+        for (BackpackCodec fallback : fallbackCodecs) {
+            if (Files.exists(shardFile(backpackUuid, fallback.getExtension()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public List<UUID> keys() throws IOException {
+        Set<UUID> uuids = new LinkedHashSet<>();
+        if (!Files.isDirectory(root)) {
+            return new ArrayList<>(uuids);
+        }
+
+        List<String> extensions = new ArrayList<>();
+        extensions.add(extension);
+        for (BackpackCodec fallback : fallbackCodecs) {
+            extensions.add(fallback.getExtension());
+        }
+
+        try (DirectoryStream<Path> shards = Files.newDirectoryStream(root, Files::isDirectory)) {
+            for (Path shard : shards) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(shard)) {
+                    for (Path file : files) {
+                        String name = file.getFileName().toString();
+                        for (String fileExtension : extensions) {
+                            if (!name.endsWith(fileExtension)) {
+                                continue;
+                            }
+                            try {
+                                uuids.add(UUID.fromString(
+                                    name.substring(0, name.length() - fileExtension.length())));
+                            } catch (IllegalArgumentException e) {
+                                // Skip files that are not backpack shards
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(uuids);
+    }
+}
@@ -0,0 +1,218 @@
+package com.shweit.expendablebackpacks.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes backpack snapshots to storage off the tick threads.
+ * Only the newest snapshot per backpack is kept while it waits. A drain loop on the IO
+ * thread hands every pending backpack to its keyed storage executor, so different
+ * backpacks are written in parallel while writes to the same backpack run one after
+ * another and can never be reordered. A snapshot submitted during a write is picked up
+ * by the same or the next drain.
+ *
+ * <p>A snapshot whose write fails stays pending, so loads keep seeing it and a newer
+ * snapshot of the same backpack is combined with it instead of replacing it. Failed
+ * backpacks are not retried by the drain that saw them fail, only by the next
+ * {@link #submit} of that backpack or the next {@link #retryFailed}.
+ */
+public class SnapshotWriter {
+
+    private final BackpackStorage storage;
+    private final Executor ioExecutor;
+    private final Function<UUID, Executor> storageExecutors;
+    private final Logger logger;
+    private final Map<UUID, BackpackSnapshot> pending;
+    private final Set<UUID> failed;
+    private final AtomicBoolean draining;
+
+    /**
+     * Create a new snapshot writer.
+     *
+     * @param storage the storage engine to write to
+     * @param ioExecutor the executor running the drain loop
+     * @param storageExecutors the executor running the writes of a backpack, in order
+     * @param logger the logger for write failures
+     */
+    public SnapshotWriter(BackpackStorage storage, Executor ioExecutor,
+                          Function<UUID, Executor> storageExecutors, Logger logger) {
+        this.storage = storage;
+        this.ioExecutor = ioExecutor;
+        this.storageExecutors = storageExecutors;
+        this.logger = logger;
+        this.pending = new ConcurrentHashMap<>();
+        this.failed = ConcurrentHashMap.newKeySet();
+        this.draining = new AtomicBoolean(false);
+    }
+
+    /**
+     * Queue a snapshot for writing, combining it with any older snapshot of the same backpack.
+     *
+     * @param snapshot the snapshot to write
+     */
+    public void submit(BackpackSnapshot snapshot) {
+        if (snapshot.isUnchanged()) {
+            return;
+        }
+        pending.merge(snapshot.getBackpackUuid(), snapshot, BackpackSnapshot::combine);
+        failed.remove(snapshot.getBackpackUuid());
+        scheduleDrain();
+    }
+
+    /**
+     * Try again to write the snapshots whose last write failed.
+     */
+    public void retryFailed() {
+        if (failed.isEmpty()) {
+            return;
+        }
+        failed.clear();
+        scheduleDrain();
+    }
+
+    /**
+     * Get the newest snapshot of a backpack that has not been written yet.
+     * Loads must check this first, otherwise they could read stale data from storage.
+     *
+     * @param backpackUuid the backpack UUID
+     * @return the pending snapshot, or null if nothing is waiting
+     */
+    public BackpackSnapshot getPending(UUID backpackUuid) {
+        return pending.get(backpackUuid);
+    }
+
+    /**
+     * Get every snapshot that has not been written yet.
+     *
+     * @return a view of the pending snapshots
+     */
+    public Collection<BackpackSnapshot> getPendingSnapshots() {
+        return Collections.unmodifiableCollection(pending.values());
+    }
+
+    /**
+     * Write every pending snapshot on the calling thread (used on shutdown).
+     * Snapshots that failed before are tried once more.
+     *
+     * @return true if everything was written, false if some snapshots are still pending
+     */
+    public boolean drain() {
+        failed.clear();
+        if (drainPending()) {
+            return true;
+        }
+        logger.severe(pending.size() + " backpacks could not be saved, see the errors above!");
+        return false;
+    }
+
+    /**
+     * Check if a pending snapshot is waiting for a drain, ignoring failed ones.
+     *
+     * @return true if a drain has something to write
+     */
+    private boolean hasWritable() {
+        for (UUID backpackUuid : pending.keySet()) {
+            if (!failed.contains(backpackUuid)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Start a drain loop on the IO executor unless one is already running.
+     */
+    private void scheduleDrain() {
+        if (!draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            ioExecutor.execute(() -> {
+                drainPending();
+                draining.set(false);
+
+                // A snapshot may have arrived after the last pass but before the flag was cleared
+                if (hasWritable()) {
+                    scheduleDrain();
+                }
+            });
+        } catch (RuntimeException e) {
+            // Executor no longer accepts tasks, the snapshot stays pending for drain()
+            draining.set(false);
+        }
+    }
+
+    /**
+     * Write pending snapshots until none are left apart from failed ones.
+     *
+     * @return true if every write and sync succeeded and nothing is pending anymore
+     */
+    private boolean drainPending() {
+        boolean synced = true;
+        while (hasWritable()) {
+            List<CompletableFuture<Void>> writes = new ArrayList<>(pending.size());
+            for (UUID backpackUuid : pending.keySet()) {
+                if (failed.contains(backpackUuid)) {
+                    continue;
+                }
+                try {
+                    writes.add(CompletableFuture.runAsync(() -> write(backpackUuid),
+                        storageExecutors.apply(backpackUuid)));
+                } catch (RejectedExecutionException e) {
+                    // Storage executor is shut down, write on the draining thread
+                    write(backpackUuid);
+                }
+            }
+            CompletableFuture.allOf(writes.toArray(new CompletableFuture[0]))
+                .exceptionally(error -> null)
+                .join();
+
+            // Make the whole batch durable before picking up the next one
+            try {
+                storage.sync();
+            } catch (IOException e) {
+                synced = false;
+                logger.log(Level.SEVERE, "Could not sync backpack storage!", e);
+            }
+        }
+        return synced && pending.isEmpty();
+    }
+
+    /**
+     * Write the pending snapshot of a backpack, if there still is one.
+     * A failed snapshot stays pending, the manager already moved its delta baseline past it.
+     *
+     * @param backpackUuid the backpack UUID
+     */
+    private void write(UUID backpackUuid) {
+        // Re-read here, an earlier write of this backpack may have taken it already
+        BackpackSnapshot snapshot = pending.get(backpackUuid);
+        if (snapshot == null) {
+            return;
+        }
+        try {
+            snapshot.writeTo(storage);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Could not save backpack "
+                + snapshot.getBackpackUuid() + ", retrying later!", e);
+            failed.add(backpackUuid);
+            return;
+        }
+        // Keep the entry if a newer snapshot replaced it during the write
+        pending.remove(backpackUuid, snapshot);
+    }
+}
@@ -0,0 +1,201 @@
+package com.shweit.expendablebackpacks.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Single-file storage engine keeping every backpack in backpacks.yml.
+ * Every change rewrites the whole file, so this engine is only suited for small servers.
+ *
+ * <p>Only raw text is kept in memory: opening the file splits it into one text block per
+ * backpack, a load parses just that block, and a store serializes just the stored backpack
+ * into a new block. A save concatenates the blocks, so neither startup nor saving depends
+ * on the item count, and parsed items are never held beyond the load that needed them.
+ */
+public class YamlBackpackStorage implements BackpackStorage {
+
+    private final File file;
+    private final Map<UUID, String> rawBlocks;
+
+    /**
+     * Create a new YAML storage backed by the given file.
+     *
+     * @param file the backpacks.yml file
+     * @throws IOException if the file cannot be created or read
+     */
+    public YamlBackpackStorage(File file) throws IOException {
+        this.file = file;
+        this.rawBlocks = new LinkedHashMap<>();
+        if (!file.exists()) {
+            file.createNewFile();
+        }
+        index();
+    }
+
+    @Override
+    public String getName() {
+        return "yaml";
+    }
+
+    /**
+     * Split the file into top-level blocks, one per backpack UUID, without parsing them.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    private void index() throws IOException {
+        UUID current = null;
+        StringBuilder block = new StringBuilder();
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            UUID key = topLevelKey(line);
+            if (key != null || isTopLevel(line)) {
+                if (current != null) {
+                    rawBlocks.put(current, block.toString());
+                }
+                current = key;
+                block.setLength(0);
+            }
+            if (current != null) {
+                block.append(line).append('\n');
+            }
+        }
+        if (current != null) {
+            rawBlocks.put(current, block.toString());
+        }
+    }
+
+    /**
+     * Check if a line starts a new top-level mapping entry.
+     *
+     * @param line the line
+     * @return true for top-level keys
+     */
+    private static boolean isTopLevel(String line) {
+        return !line.isEmpty() && !Character.isWhitespace(line.charAt(0))
+            && line.charAt(0) != '#' && line.charAt(0) != '-';
+    }
+
+    /**
+     * Get the backpack UUID a top-level line starts.
+     *
+     * @param line the line
+     * @return the UUID, or null if the line is not a top-level UUID key
+     */
+    private static UUID topLevelKey(String line) {
+        if (!isTopLevel(line)) {
+            return null;
+        }
+        int colon = line.indexOf(':');
+        if (colon < 0) {
+            return null;
+        }
+        String key = line.substring(0, colon).trim();
+        if (key.length() > 1 && (key.charAt(0) == '\'' || key.charAt(0) == '"')) {
+            key = key.substring(1, key.length() - 1);
+        }
+        try {
+            return UUID.fromString(key);
+        } catch (IllegalArgumentException e) {
+            // Skip keys that are not backpack UUIDs
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized ItemStack[] load(UUID backpackUuid) throws IOException {
+        String block = rawBlocks.get(backpackUuid);
+        if (block == null) {
+            return null;
+        }
+        YamlConfiguration config = new YamlConfiguration();
+        try {
+            config.loadFromString(block);
+        } catch (InvalidConfigurationException e) {
+            throw new IOException("Could not parse backpack " + backpackUuid, e);
+        }
+        List<?> contents = config.getList(backpackUuid.toString() + ".contents");
+        if (contents == null) {
+            return null;
+        }
+        ItemStack[] items = new ItemStack[contents.size()];
+        for (int i = 0; i < items.length; i++) {
+            if (contents.get(i) instanceof ItemStack item) {
+                items[i] = item;
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Store the contents of a backpack.
+     * Only this backpack is serialized, into the text block that replaces its old one.
+     *
+     * @param backpackUuid the backpack UUID
+     * @param contents the contents to store
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public synchronized void store(UUID backpackUuid, ItemStack[] contents) throws IOException {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set(backpackUuid.toString() + ".contents", Arrays.asList(contents));
+        rawBlocks.put(backpackUuid, config.saveToString());
+        save();
+    }
+
+    @Override
+    public synchronized void delete(UUID backpackUuid) throws IOException {
+        if (rawBlocks.remove(backpackUuid) != null) {
+            save();
+        }
+    }
+
+    @Override
+    public synchronized boolean exists(UUID backpackUuid) {
+        return rawBlocks.containsKey(backpackUuid);
+    }
+
+    @Override
+    public synchronized List<UUID> keys() {
+        return new ArrayList<>(rawBlocks.keySet());
+    }
+
+    /**
+     * Rewrite the whole file by concatenating the text blocks of every backpack.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    private void save() throws IOException {
+        StringBuilder out = new StringBuilder();
+        for (String block : rawBlocks.values()) {
+            out.append(block);
+        }
+
+        Path target = file.toPath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.writeString(temp, out, StandardCharsets.UTF_8);
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        save();
+    }
+}
@@ -0,0 +1,55 @@
+package com.shweit.expendablebackpacks.storage.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Converts backpack contents to and from their on-disk representation.
+ */
+public interface BackpackCodec {
+
+    /**
+     * Get the file extension used for records in this format, including the dot.
+     *
+     * @return the file extension
+     */
+    String getExtension();
+
+    /**
+     * Encode backpack contents.
+     *
+     * @param contents the contents to encode, null entries are empty slots
+     * @return the encoded record
+     */
+    byte[] encode(ItemStack[] contents);
+
+    /**
+     * Decode backpack contents.
+     *
+     * @param record the encoded record, read from its position to its limit
+     * @return the decoded contents
+     * @throws IOException if the record is corrupt or uses an unknown version
+     */
+    ItemStack[] decode(ByteBuffer record) throws IOException;
+
+    /**
+     * Encode only some slots of a backpack.
+     *
+     * @param contents the full contents, null entries are empty slots
+     * @param changedSlots the slots to encode, including slots that became empty
+     * @return the encoded delta record
+     */
+    byte[] encodeDelta(ItemStack[] contents, BitSet changedSlots);
+
+    /**
+     * Apply a delta record to previously decoded contents.
+     *
+     * @param record the encoded delta, read from its position to its limit
+     * @param contents the contents to apply the delta to
+     * @return the updated contents; a new array if the delta changed the slot count
+     * @throws IOException if the record is corrupt or uses an unknown version
+     */
+    ItemStack[] applyDelta(ByteBuffer record, ItemStack[] contents) throws IOException;
+}
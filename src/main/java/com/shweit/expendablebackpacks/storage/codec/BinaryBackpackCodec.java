@@ -0,0 +1,171 @@
+package com.shweit.expendablebackpacks.storage.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.Function;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Compact binary record format based on Paper's {@link ItemStack#serializeAsBytes()}.
+ *
+ * <p>Layout (big endian):
+ * <pre>
+ * byte    version      (currently 1)
+ * short   slot count
+ * long[]  slot bitmap  (ceil(slot count / 64) words, bit set = slot holds an item)
+ * per set bit, in slot order:
+ *   int   item length
+ *   byte  item bytes
+ * </pre>
+ * Empty slots cost a single bit.
+ *
+ * <p>Delta records use the same layout, except that the bitmap marks changed slots and
+ * every changed slot has a length; a length of zero means the slot became empty.
+ */
+public class BinaryBackpackCodec implements BackpackCodec {
+
+    /**
+     * Current record version, written as the first byte of every record.
+     */
+    public static final byte VERSION = 1;
+
+    private final Function<byte[], ItemStack> itemReader;
+
+    /**
+     * Create a codec reading items with Paper's {@link ItemStack#deserializeBytes(byte[])}.
+     */
+    public BinaryBackpackCodec() {
+        this(ItemStack::deserializeBytes);
+    }
+
+    /**
+     * Create a codec with a custom item reader, so records can be checked without a server.
+     *
+     * @param itemReader turns the bytes of one item back into an item
+     */
+    BinaryBackpackCodec(Function<byte[], ItemStack> itemReader) {
+        this.itemReader = itemReader;
+    }
+
+    @Override
+    public String getExtension() {
+        return ".bin";
+    }
+
+    @Override
+    public byte[] encode(ItemStack[] contents) {
+        return write(contents, null);
+    }
+
+    @Override
+    public ItemStack[] decode(ByteBuffer record) throws IOException {
+        return read(record, null);
+    }
+
+    @Override
+    public byte[] encodeDelta(ItemStack[] contents, BitSet changedSlots) {
+        return write(contents, changedSlots);
+    }
+
+    @Override
+    public ItemStack[] applyDelta(ByteBuffer record, ItemStack[] contents) throws IOException {
+        return read(record, contents);
+    }
+
+    /**
+     * Encode a full or a delta record.
+     *
+     * @param contents the full contents, null entries are empty slots
+     * @param changedSlots the slots of a delta, or null for a full record
+     * @return the encoded record
+     */
+    private byte[] write(ItemStack[] contents, BitSet changedSlots) {
+        long[] bitmap = new long[(contents.length + 63) >>> 6];
+        byte[][] items = new byte[contents.length][];
+        int size = 1 + 2 + bitmap.length * Long.BYTES;
+
+        for (int slot = 0; slot < contents.length; slot++) {
+            ItemStack item = contents[slot];
+            boolean empty = item == null || item.getType().isAir();
+            if (changedSlots == null ? empty : !changedSlots.get(slot)) {
+                continue;
+            }
+            // A delta records a slot that became empty with a length of zero
+            items[slot] = empty ? new byte[0] : item.serializeAsBytes();
+            bitmap[slot >>> 6] |= 1L << (slot & 63);
+            size += Integer.BYTES + items[slot].length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(VERSION);
+        buffer.putShort((short) contents.length);
+        for (long word : bitmap) {
+            buffer.putLong(word);
+        }
+        for (byte[] item : items) {
+            if (item != null) {
+                buffer.putInt(item.length);
+                buffer.put(item);
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Decode a full record, or apply a delta record to earlier contents.
+     * Every kind of damage is reported as an {@link IOException}, never as a runtime exception.
+     *
+     * @param record the encoded record
+     * @param contents the contents a delta applies to, or null for a full record
+     * @return the decoded contents
+     * @throws IOException if the record is corrupt or uses an unknown version
+     */
+    private ItemStack[] read(ByteBuffer record, ItemStack[] contents) throws IOException {
+        String kind = contents == null ? "record" : "delta record";
+        try {
+            byte version = record.get();
+            if (version != VERSION) {
+                throw new IOException("Unsupported backpack record version " + version);
+            }
+
+            int slots = Short.toUnsignedInt(record.getShort());
+            ItemStack[] result;
+            if (contents == null) {
+                result = new ItemStack[slots];
+            } else {
+                result = slots == contents.length ? contents : Arrays.copyOf(contents, slots);
+            }
+            long[] bitmap = new long[(slots + 63) >>> 6];
+            for (int i = 0; i < bitmap.length; i++) {
+                bitmap[i] = record.getLong();
+            }
+
+            for (int word = 0; word < bitmap.length; word++) {
+                long bits = bitmap[word];
+                while (bits != 0) {
+                    int slot = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+
+                    int length = record.getInt();
+                    if (length < 0 || length > record.remaining()) {
+                        throw new IOException("Corrupt backpack " + kind + ", slot " + slot
+                            + " claims " + length + " bytes but " + record.remaining() + " are left");
+                    }
+                    byte[] item = new byte[length];
+                    record.get(item);
+                    if (slot < slots) {
+                        result[slot] = length == 0 ? null : itemReader.apply(item);
+                    }
+                }
+            }
+            return result;
+        } catch (IOException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            // Buffer underflows as well as anything the item deserializer throws
+            throw new IOException("Corrupt backpack " + kind, e);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.shweit.expendablebackpacks.storage.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Human-readable record format storing contents as a YAML-serialized item list.
+ */
+public class YamlBackpackCodec implements BackpackCodec {
+
+    @Override
+    public String getExtension() {
+        return ".yml";
+    }
+
+    @Override
+    public byte[] encode(ItemStack[] contents) {
+        YamlConfiguration record = new YamlConfiguration();
+        record.set("contents", java.util.Arrays.asList(contents));
+        return record.saveToString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public ItemStack[] decode(ByteBuffer record) throws IOException {
+        YamlConfiguration config = new YamlConfiguration();
+        try {
+            config.loadFromString(StandardCharsets.UTF_8.decode(record).toString());
+        } catch (InvalidConfigurationException e) {
+            throw new IOException("Corrupt backpack record", e);
+        }
+
+        List<?> contents = config.getList("contents");
+        if (contents == null) {
+            throw new IOException("Backpack record has no contents");
+        }
+        ItemStack[] items = new ItemStack[contents.size()];
+        for (int i = 0; i < items.length; i++) {
+            if (contents.get(i) instanceof ItemStack item) {
+                items[i] = item;
+            }
+        }
+        return items;
+    }
+
+    @Override
+    public byte[] encodeDelta(ItemStack[] contents, BitSet changedSlots) {
+        YamlConfiguration record = new YamlConfiguration();
+        List<Integer> changed = new ArrayList<>();
+        record.set("size", contents.length);
+        for (int slot = changedSlots.nextSetBit(0); slot >= 0 && slot < contents.length;
+             slot = changedSlots.nextSetBit(slot + 1)) {
+            changed.add(slot);
+            if (contents[slot] != null) {
+                record.set("items." + slot, contents[slot]);
+            }
+        }
+        record.set("changed", changed);
+        return record.saveToString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public ItemStack[] applyDelta(ByteBuffer record, ItemStack[] contents) throws IOException {
+        YamlConfiguration config = new YamlConfiguration();
+        try {
+            config.loadFromString(StandardCharsets.UTF_8.decode(record).toString());
+        } catch (InvalidConfigurationException e) {
+            throw new IOException("Corrupt backpack delta record", e);
+        }
+
+        int slots = config.getInt("size", contents.length);
+        ItemStack[] result = slots == contents.length
+            ? contents : java.util.Arrays.copyOf(contents, slots);
+        for (int slot : config.getIntegerList("changed")) {
+            if (slot < slots) {
+                result[slot] = config.getItemStack("items." + slot);
+            }
+        }
+        return result;
+    }
+}
@@ -1,5 +1,6 @@
 package com.shweit.expendablebackpacks.util;
 
+import com.shweit.expendablebackpacks.items.BackpackData;
 import com.shweit.expendablebackpacks.items.BackpackTier;
 import java.util.UUID;
 import org.bukkit.Material;
@@ -17,7 +18,9 @@ public class BackpackBlockUtil {
 
     private static Plugin plugin;
     @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
-    private static NamespacedKey BACKPACK_UUID_KEY;
+    private static NamespacedKey BACKPACK_ID_KEY;
+    @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
+    private static NamespacedKey LEGACY_UUID_KEY;
     private static NamespacedKey BACKPACK_TIER_KEY;
 
     /**
@@ -28,10 +31,84 @@ public class BackpackBlockUtil {
     @SuppressWarnings("EI_EXPOSE_STATIC_REP2")
     public static void initialize(Plugin pluginInstance) {
         plugin = pluginInstance;
-        BACKPACK_UUID_KEY = new NamespacedKey(plugin, "backpack_uuid");
+        BACKPACK_ID_KEY = new NamespacedKey(plugin, "backpack_id");
+        LEGACY_UUID_KEY = new NamespacedKey(plugin, "backpack_uuid");
         BACKPACK_TIER_KEY = new NamespacedKey(plugin, "backpack_tier");
     }
 
+    /**
+     * Check if a block type can hold a placed backpack.
+     *
+     * @param block the block to check.
+     * @return true for player heads.
+     */
+    private static boolean isHead(Block block) {
+        Material type = block.getType();
+        return type == Material.PLAYER_HEAD || type == Material.PLAYER_WALL_HEAD;
+    }
+
+    /**
+     * Read the backpack data of a placed backpack. The block type is checked first and the
+     * tile entity is read once without taking a snapshot, so callers needing both the UUID
+     * and the tier should use this instead of the single-value getters.
+     *
+     * @param block the block to read.
+     * @return the backpack data, or null if the block is not a backpack.
+     */
+    @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
+    public static BackpackData read(Block block) {
+        if (block == null || !isHead(block)) {
+            return null;
+        }
+
+        if (!(block.getState(false) instanceof Skull skull)) {
+            return null;
+        }
+
+        PersistentDataContainer pdc = skull.getPersistentDataContainer();
+        UUID uuid;
+        if (pdc.has(BACKPACK_ID_KEY, UuidDataType.INSTANCE)) {
+            try {
+                uuid = pdc.get(BACKPACK_ID_KEY, UuidDataType.INSTANCE);
+            } catch (IllegalArgumentException e) {
+                uuid = null;
+            }
+        } else {
+            String uuidString = pdc.get(LEGACY_UUID_KEY, PersistentDataType.STRING);
+            if (uuidString == null) {
+                return null;
+            }
+            uuid = parseLegacy(skull, pdc, uuidString);
+        }
+
+        Integer level = pdc.get(BACKPACK_TIER_KEY, PersistentDataType.INTEGER);
+        BackpackTier tier = level == null ? null : BackpackTier.fromLevel(level);
+        return new BackpackData(uuid, tier);
+    }
+
+    /**
+     * Parse a legacy string UUID and rewrite it in the binary format.
+     *
+     * @param skull the live skull state.
+     * @param pdc the skull's data container.
+     * @param uuidString the stored string.
+     * @return the UUID, or null if the string is invalid.
+     */
+    private static UUID parseLegacy(Skull skull, PersistentDataContainer pdc, String uuidString) {
+        UUID uuid;
+        try {
+            uuid = UUID.fromString(uuidString);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        // Rewrite blocks placed before the binary format while we have them at hand
+        pdc.set(BACKPACK_ID_KEY, UuidDataType.INSTANCE, uuid);
+        pdc.remove(LEGACY_UUID_KEY);
+        skull.update();
+        return uuid;
+    }
+
     /**
      * Check if a block is a placed backpack.
      *
@@ -39,17 +116,17 @@ public class BackpackBlockUtil {
      * @return true if the block is a backpack, false otherwise.
      */
     public static boolean isBackpackBlock(Block block) {
-        if (block == null || block.getType() != Material.PLAYER_HEAD
-            && block.getType() != Material.PLAYER_WALL_HEAD) {
+        if (block == null || !isHead(block)) {
             return false;
         }
 
-        if (!(block.getState() instanceof Skull skull)) {
+        if (!(block.getState(false) instanceof Skull skull)) {
             return false;
         }
 
         PersistentDataContainer pdc = skull.getPersistentDataContainer();
-        return pdc.has(BACKPACK_UUID_KEY, PersistentDataType.STRING);
+        return pdc.has(BACKPACK_ID_KEY, UuidDataType.INSTANCE)
+            || pdc.has(LEGACY_UUID_KEY, PersistentDataType.STRING);
     }
 
     /**
@@ -60,23 +137,8 @@ public class BackpackBlockUtil {
      */
     @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
     public static UUID getBackpackUUIDFromBlock(Block block) {
-        if (!isBackpackBlock(block)) {
-            return null;
-        }
-
-        Skull skull = (Skull) block.getState();
-        PersistentDataContainer pdc = skull.getPersistentDataContainer();
-        String uuidString = pdc.get(BACKPACK_UUID_KEY, PersistentDataType.STRING);
-
-        if (uuidString == null) {
-            return null;
-        }
-
-        try {
-            return UUID.fromString(uuidString);
-        } catch (IllegalArgumentException e) {
-            return null;
-        }
+        BackpackData data = read(block);
+        return data == null ? null : data.backpackUuid();
     }
 
     /**
@@ -86,19 +148,8 @@ public class BackpackBlockUtil {
      * @return the tier of the backpack, or null if not a backpack block.
      */
     public static BackpackTier getBackpackTierFromBlock(Block block) {
-        if (!isBackpackBlock(block)) {
-            return null;
-        }
-
-        Skull skull = (Skull) block.getState();
-        PersistentDataContainer pdc = skull.getPersistentDataContainer();
-        Integer level = pdc.get(BACKPACK_TIER_KEY, PersistentDataType.INTEGER);
-
-        if (level == null) {
-            return null;
-        }
-
-        return BackpackTier.fromLevel(level);
+        BackpackData data = read(block);
+        return data == null ? null : data.tier();
     }
 
     /**
@@ -115,8 +166,7 @@ public class BackpackBlockUtil {
             return false;
         }
 
-        if (block.getType() != Material.PLAYER_HEAD
-            && block.getType() != Material.PLAYER_WALL_HEAD) {
+        if (!isHead(block)) {
             return false;
         }
 
@@ -125,7 +175,8 @@ public class BackpackBlockUtil {
         }
 
         PersistentDataContainer pdc = skull.getPersistentDataContainer();
-        pdc.set(BACKPACK_UUID_KEY, PersistentDataType.STRING, uuid.toString());
+        pdc.set(BACKPACK_ID_KEY, UuidDataType.INSTANCE, uuid);
+        pdc.remove(LEGACY_UUID_KEY);
         pdc.set(BACKPACK_TIER_KEY, PersistentDataType.INTEGER, tier.getLevel());
 
         return skull.update();
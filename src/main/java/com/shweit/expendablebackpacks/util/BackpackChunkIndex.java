@@ -0,0 +1,176 @@
+package com.shweit.expendablebackpacks.util;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import org.bukkit.Chunk;
+import org.bukkit.NamespacedKey;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.Skull;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Per-chunk index of placed backpack positions, kept in the chunk's persistent data container.
+ * Lets explosion and piston handlers filter blocks with a hash lookup instead of reading the
+ * tile entity of every block, and skip chunks without backpacks entirely.
+ *
+ * <p>A chunk is read into memory the first time it is queried and dropped again when it
+ * or its world unloads. Chunks written before the index existed carry no entry yet and are scanned for
+ * backpack skulls once, the result is stored so the scan never repeats.
+ */
+public final class BackpackChunkIndex {
+
+    private static final int[] EMPTY = new int[0];
+
+    private static NamespacedKey INDEX_KEY;
+    private static final Map<UUID, Map<Long, Set<Integer>>> LOADED = new ConcurrentHashMap<>();
+
+    private BackpackChunkIndex() {
+    }
+
+    /**
+     * Initialize the index with the plugin instance.
+     *
+     * @param plugin the plugin instance.
+     */
+    public static void initialize(Plugin plugin) {
+        INDEX_KEY = new NamespacedKey(plugin, "backpack_blocks");
+        LOADED.clear();
+    }
+
+    /**
+     * Pack a block position into an int relative to its chunk.
+     *
+     * @param block the block.
+     * @return the packed position.
+     */
+    private static int pack(Block block) {
+        return block.getY() << 8 | (block.getZ() & 15) << 4 | block.getX() & 15;
+    }
+
+    /**
+     * Get the positions of a chunk, reading or building its index if it is not loaded yet.
+     *
+     * @param block any block in the chunk.
+     * @return the mutable set of packed positions.
+     */
+    private static Set<Integer> positions(Block block) {
+        Map<Long, Set<Integer>> chunks = LOADED.computeIfAbsent(
+            block.getWorld().getUID(), world -> new ConcurrentHashMap<>());
+        long chunkKey = Chunk.getChunkKey(block.getX() >> 4, block.getZ() >> 4);
+        Set<Integer> positions = chunks.get(chunkKey);
+        if (positions == null) {
+            positions = read(block.getChunk());
+            chunks.put(chunkKey, positions);
+        }
+        return positions;
+    }
+
+    /**
+     * Read the stored index of a chunk, scanning its tile entities if there is none.
+     *
+     * @param chunk the chunk.
+     * @return the packed positions.
+     */
+    private static Set<Integer> read(Chunk chunk) {
+        Set<Integer> positions = ConcurrentHashMap.newKeySet();
+        PersistentDataContainer pdc = chunk.getPersistentDataContainer();
+        int[] stored = pdc.get(INDEX_KEY, PersistentDataType.INTEGER_ARRAY);
+        if (stored != null) {
+            for (int position : stored) {
+                positions.add(position);
+            }
+            return positions;
+        }
+
+        // Chunk saved before the index existed, look for backpacks once
+        for (BlockState state : chunk.getTileEntities(false)) {
+            if (state instanceof Skull && BackpackBlockUtil.isBackpackBlock(state.getBlock())) {
+                positions.add(pack(state.getBlock()));
+            }
+        }
+        write(chunk, positions);
+        return positions;
+    }
+
+    /**
+     * Store the positions of a chunk in its persistent data container.
+     *
+     * @param chunk the chunk.
+     * @param positions the packed positions.
+     */
+    private static void write(Chunk chunk, Set<Integer> positions) {
+        int[] packed = positions.isEmpty() ? EMPTY
+            : positions.stream().mapToInt(Integer::intValue).toArray();
+        chunk.getPersistentDataContainer().set(INDEX_KEY, PersistentDataType.INTEGER_ARRAY, packed);
+    }
+
+    /**
+     * Record a placed backpack.
+     *
+     * @param block the backpack block.
+     */
+    public static void add(Block block) {
+        Set<Integer> positions = positions(block);
+        if (positions.add(pack(block))) {
+            write(block.getChunk(), positions);
+        }
+    }
+
+    /**
+     * Forget a removed backpack.
+     *
+     * @param block the former backpack block.
+     */
+    public static void remove(Block block) {
+        Set<Integer> positions = positions(block);
+        if (positions.remove(pack(block))) {
+            write(block.getChunk(), positions);
+        }
+    }
+
+    /**
+     * Check if a block is a placed backpack. Only indexed positions read the tile entity,
+     * positions whose backpack was removed by other means are dropped from the index.
+     *
+     * @param block the block to check.
+     * @return true if the block is a backpack, false otherwise.
+     */
+    public static boolean contains(Block block) {
+        Set<Integer> positions = positions(block);
+        if (positions.isEmpty() || !positions.contains(pack(block))) {
+            return false;
+        }
+        if (BackpackBlockUtil.isBackpackBlock(block)) {
+            return true;
+        }
+        remove(block);
+        return false;
+    }
+
+    /**
+     * Drop the in-memory index of an unloading chunk. The stored index stays in the chunk.
+     *
+     * @param chunk the unloading chunk.
+     */
+    public static void unload(Chunk chunk) {
+        Map<Long, Set<Integer>> chunks = LOADED.get(chunk.getWorld().getUID());
+        if (chunks != null) {
+            chunks.remove(chunk.getChunkKey());
+        }
+    }
+
+    /**
+     * Drop the in-memory index of every chunk of an unloading world.
+     *
+     * @param world the unloading world.
+     */
+    public static void unload(World world) {
+        LOADED.remove(world.getUID());
+    }
+}
@@ -9,20 +9,77 @@ import org.bukkit.scheduler.BukkitTask;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 public final class BackpackScheduler {
+    private static final int IO_QUEUE_WARNING = 1024;
+
     private final Plugin plugin;
+    private final ThreadPoolExecutor ioExecutor;
+    private final ExecutorService storageExecutor;
+    private final ExecutorService compactionExecutor;
+    private final Semaphore storagePermits;
+    private final Map<UUID, CompletableFuture<Void>> storageTails;
     private boolean folia = false;
-    private Set<Task> foliaTasks;
+    private Map<ScheduledTask, Task> foliaTasks;
+    private Set<ScheduledTask> finishedTasks;
+    private final AtomicBoolean ioBacklogged = new AtomicBoolean();
+    private final LongAdder scheduledTasks = new LongAdder();
+    private final LongAdder completedTasks = new LongAdder();
+    private final AtomicInteger runningTasks = new AtomicInteger();
     private boolean isCancellingAll = false;
 
     public BackpackScheduler(Plugin plugin) {
         this.plugin = plugin;
+        // Unbounded, IO must never fall back to the submitting tick thread
+        this.ioExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, plugin.getName() + " IO");
+                thread.setDaemon(true);
+                return thread;
+            },
+            (runnable, executor) -> {
+                throw new RejectedExecutionException("The IO executor has been shut down!");
+            }) {
+            @Override
+            public void execute(Runnable command) {
+                super.execute(command);
+                checkIoBacklog();
+            }
+        };
+        this.compactionExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, plugin.getName() + " compaction");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        this.storageExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name(plugin.getName() + " storage-", 0).factory());
+        this.storagePermits = new Semaphore(Math.max(1,
+            plugin.getConfig().getInt("storage.max-concurrent-io", 16)));
+        this.storageTails = new ConcurrentHashMap<>();
         try {
             Class.forName("io.papermc.paper.threadedregions.scheduler.RegionScheduler");
-            foliaTasks = ConcurrentHashMap.newKeySet();
+            foliaTasks = new ConcurrentHashMap<>();
+            finishedTasks = ConcurrentHashMap.newKeySet();
             folia = true;
             plugin.getLogger().warning("Using Folia scheduler!");
         } catch (ClassNotFoundException ignored) {
@@ -38,13 +95,123 @@ public final class BackpackScheduler {
         return plugin;
     }
 
+    /**
+     * Get the plugin-owned executor for blocking disk IO.
+     * It runs on its own thread on both Bukkit and Folia, so disk latency never shows up
+     * in tick times. Tasks run in submission order. The queue is unbounded, a growing backlog
+     * is logged and shown by {@link #getIoQueueSize()} instead of blocking the submitter.
+     * @return The IO executor
+     */
+    public Executor getIoExecutor() {
+        return ioExecutor;
+    }
+
+    /**
+     * Run a storage operation for a key on its own virtual thread.
+     * Operations on the same key run one after another in submission order, operations on
+     * different keys overlap, limited by the storage.max-concurrent-io permits.
+     * @param key The key operations are ordered by, usually a backpack UUID
+     * @param runnable The operation to run
+     * @return A future completed once the operation ran
+     * @throws RejectedExecutionException if the IO executors have been shut down
+     */
+    public CompletableFuture<Void> runStorage(UUID key, Runnable runnable) {
+        if (storageExecutor.isShutdown())
+            throw new RejectedExecutionException("The storage executor has been shut down!");
+
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        CompletableFuture<Void> previous = storageTails.put(key, done);
+        Runnable operation = () -> {
+            try {
+                storagePermits.acquire();
+                try {
+                    runnable.run();
+                } finally {
+                    storagePermits.release();
+                }
+                done.complete(null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                done.completeExceptionally(e);
+            } catch (Throwable t) {
+                done.completeExceptionally(t);
+            }
+        };
+        Runnable start = () -> {
+            try {
+                storageExecutor.execute(operation);
+            } catch (RejectedExecutionException e) {
+                // Shut down while waiting for the previous operation, finish on the thread that ran it
+                operation.run();
+            }
+        };
+
+        // Start after the previous operation on this key, whether or not it failed
+        if (previous == null) {
+            start.run();
+        } else {
+            previous.whenComplete((ignored, error) -> start.run());
+        }
+        done.whenComplete((ignored, error) -> storageTails.remove(key, done));
+        return done;
+    }
+
+    /**
+     * Get an executor running every task through {@link #runStorage(UUID, Runnable)} with the given key.
+     * @param key The key operations are ordered by, usually a backpack UUID
+     * @return The keyed storage executor
+     */
+    public Executor getStorageExecutor(UUID key) {
+        return runnable -> runStorage(key, runnable);
+    }
+
+    /**
+     * Get the executor for long running storage maintenance such as journal compactions.
+     * It has its own thread, so queued writes never wait behind a compaction on the IO thread.
+     * @return The compaction executor
+     */
+    public Executor getCompactionExecutor() {
+        return compactionExecutor;
+    }
+
+    /**
+     * Get the executor draining the mailboxes of shared backpacks.
+     * Drain loops run on the global region, a shared backpack has no region of its own and
+     * its inventory must not be changed from a thread that is not ticking the server.
+     * Throws once the plugin no longer accepts tasks.
+     * @return The mailbox executor
+     */
+    public Executor getMailboxExecutor() {
+        return this::runTask;
+    }
+
+    /**
+     * Stop accepting IO tasks and wait for the queued ones to finish.
+     * @param timeout The maximum time to wait for each executor
+     * @param unit The unit of the timeout
+     * @return true if every queued task finished in time
+     */
+    public boolean shutdownIo(long timeout, TimeUnit unit) {
+        ioExecutor.shutdown();
+        try {
+            boolean drained = ioExecutor.awaitTermination(timeout, unit);
+            storageExecutor.shutdown();
+            drained &= storageExecutor.awaitTermination(timeout, unit);
+            compactionExecutor.shutdown();
+            return compactionExecutor.awaitTermination(timeout, unit) && drained;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
     /**
      * Cancel all tasks owned by this scheduler's owning plugin.
      */
     public void cancelTasks() {
         if (isFolia()) {
             isCancellingAll = true;
-            List<Task> copy = new ArrayList<>(foliaTasks);
+            List<Task> copy = new ArrayList<>(foliaTasks.values());
             for (Task task : copy) {
                 try {
                     task._internalCancel();
@@ -53,6 +220,7 @@ public final class BackpackScheduler {
                 }
             }
             foliaTasks.clear();
+            finishedTasks.clear();
             isCancellingAll = false;
             return;
         }
@@ -89,16 +257,19 @@ public final class BackpackScheduler {
                 throw new RuntimeException("Unable to schedule a task while cancelTasks() is being called!");
 
             return new Task(this, plugin.getServer().getGlobalRegionScheduler().run(plugin, task -> {
-                runnable.run();
-                this.foliaTasks.removeIf(t -> t.foliaTask == task);
+                try {
+                    runTracked(runnable);
+                } finally {
+                    finish(task);
+                }
             }));
         }
 
-        return new Task(this, plugin.getServer().getScheduler().runTask(plugin, runnable));
+        return new Task(this, plugin.getServer().getScheduler().runTask(plugin, () -> runTracked(runnable)));
     }
 
     /**
-     * Schedules an async task to be executed on the global region scheduler on the next tick.
+     * Schedules an async task to be executed off the tick threads as soon as possible.
      * @param runnable The task to execute
      * @return The scheduled task wrapper for Bukkit or Folia
      */
@@ -107,13 +278,16 @@ public final class BackpackScheduler {
             if (isNotAccepting())
                 throw new RuntimeException("Unable to schedule a task while cancelTasks() is being called!");
 
-            return new Task(this, plugin.getServer().getGlobalRegionScheduler().run(plugin, task -> {
-                runnable.run();
-                this.foliaTasks.removeIf(t -> t.foliaTask == task);
+            return new Task(this, plugin.getServer().getAsyncScheduler().runNow(plugin, task -> {
+                try {
+                    runTracked(runnable);
+                } finally {
+                    finish(task);
+                }
             }));
         }
 
-        return new Task(this, plugin.getServer().getScheduler().runTaskAsynchronously(plugin, runnable));
+        return new Task(this, plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> runTracked(runnable)));
     }
 
     /**
@@ -128,12 +302,15 @@ public final class BackpackScheduler {
                 throw new RuntimeException("Unable to schedule a task while cancelTasks() is being called!");
 
             return new Task(this, plugin.getServer().getRegionScheduler().run(plugin, location, task -> {
-                runnable.run();
-                this.foliaTasks.removeIf(t -> t.foliaTask == task);
+                try {
+                    runTracked(runnable);
+                } finally {
+                    finish(task);
+                }
             }));
         }
 
-        return new Task(this, plugin.getServer().getScheduler().runTask(plugin, runnable));
+        return new Task(this, plugin.getServer().getScheduler().runTask(plugin, () -> runTracked(runnable)));
     }
 
     /**
@@ -148,12 +325,15 @@ public final class BackpackScheduler {
                 throw new RuntimeException("Unable to schedule a task while cancelTasks() is being called!");
 
             return new Task(this, plugin.getServer().getRegionScheduler().run(plugin, location, task -> {
-                runnable.run();
-                this.foliaTasks.removeIf(t -> t.foliaTask == task);
+                try {
+                    runTracked(runnable);
+                } finally {
+                    finish(task);
+                }
             }));
         }
 
-        return new Task(this, plugin.getServer().getScheduler().runTaskAsynchronously(plugin, runnable));
+        return new Task(this, plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> runTracked(runnable)));
     }
 
     /**
@@ -168,12 +348,15 @@ public final class BackpackScheduler {
                 throw new RuntimeException("Unable to schedule a task while cancelTasks() is being called!");
 
             return new Task(this, plugin.getServer().getRegionScheduler().run(plugin, chunk.getWorld(), chunk.getX(), chunk.getZ(),task -> {
-                runnable.run();
-                this.foliaTasks.removeIf(t -> t.foliaTask == task);
+                try {
+                    runTracked(runnable);
+                } finally {
+                    finish(task);
+                }
             }));
         }
 
-        return new Task(this, plugin.getServer().getScheduler().runTask(plugin, runnable));
+        return new Task(this, plugin.getServer().getScheduler().runTask(plugin, () -> runTracked(runnable)));
     }
 
     /**
@@ -188,52 +371,87 @@ public final class BackpackScheduler {
                 throw new RuntimeException("Unable to schedule a task while cancelTasks() is being called!");
 
             return new Task(this, plugin.getServer().getRegionScheduler().run(plugin, chunk.getWorld(), chunk.getX(), chunk.getZ(),task -> {
-                runnable.run();
-                this.foliaTasks.removeIf(t -> t.foliaTask == task);
+                try {
+                    runTracked(runnable);
+                } finally {
+                    finish(task);
+                }
             }));
         }
 
-        return new Task(this, plugin.getServer().getScheduler().runTaskAsynchronously(plugin, runnable));
+        return new Task(this, plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> runTracked(runnable)));
     }
 
     /**
      * Schedules a task to be executed on the region which owns the entity on the next tick.
      * @param runnable The task to execute
      * @param entity The entity to execute the task from
-     * @return The scheduled task wrapper for Bukkit or Folia
+     * @return The scheduled task wrapper for Bukkit or Folia, or null if the entity was already removed
      */
     public Task runTask(Runnable runnable, Entity entity) {
         if (isFolia()) {
             if (isNotAccepting())
                 throw new RuntimeException("Unable to schedule a task while cancelTasks() is being called!");
 
-            return new Task(this, entity.getScheduler().run(plugin, task -> {
-                runnable.run();
-                this.foliaTasks.removeIf(t -> t.foliaTask == task);
-            }, null));
+            return scheduleOnEntity(retiredHook -> entity.getScheduler().run(plugin, task -> {
+                try {
+                    runTracked(runnable);
+                } finally {
+                    finish(task);
+                }
+            }, retiredHook), null);
         }
 
-        return new Task(this, plugin.getServer().getScheduler().runTask(plugin, runnable));
+        return new Task(this, plugin.getServer().getScheduler().runTask(plugin, () -> runTracked(runnable)));
+    }
+
+    /**
+     * Schedules a task to be executed on the region which owns the entity on the next tick.
+     * On Bukkit the retired task is never called, the task runs on the main thread even if the
+     * entity was removed meanwhile.
+     * @param runnable The task to execute
+     * @param entity The entity to execute the task on
+     * @param retired The task to execute instead if the entity was removed before, may run on any thread
+     * @return The scheduled task wrapper for Bukkit or Folia, or null if the entity was already removed
+     */
+    public Task runTask(Runnable runnable, Entity entity, Runnable retired) {
+        if (isFolia()) {
+            if (isNotAccepting())
+                throw new RuntimeException("Unable to schedule a task while cancelTasks() is being called!");
+
+            return scheduleOnEntity(retiredHook -> entity.getScheduler().run(plugin, task -> {
+                try {
+                    runTracked(runnable);
+                } finally {
+                    finish(task);
+                }
+            }, retiredHook), retired);
+        }
+
+        return new Task(this, plugin.getServer().getScheduler().runTask(plugin, () -> runTracked(runnable)));
     }
 
     /**
      * Schedules an async task to be executed on the region which owns the entity on the next tick.
      * @param runnable The task to execute
      * @param entity The entity to execute the task from
-     * @return The scheduled task wrapper for Bukkit or Folia
+     * @return The scheduled task wrapper for Bukkit or Folia, or null if the entity was already removed
      */
     public Task runTaskAsync(Runnable runnable, Entity entity) {
         if (isFolia()) {
             if (isNotAccepting())
                 throw new RuntimeException("Unable to schedule a task while cancelTasks() is being called!");
 
-            return new Task(this, entity.getScheduler().run(plugin, task -> {
-                runnable.run();
-                this.foliaTasks.removeIf(t -> t.foliaTask == task);
-            }, null));
+            return scheduleOnEntity(retiredHook -> entity.getScheduler().run(plugin, task -> {
+                try {
+                    runTracked(runnable);
+                } finally {
+                    finish(task);
+                }
+            }, retiredHook), null);
         }
 
-        return new Task(this, plugin.getServer().getScheduler().runTaskAsynchronously(plugin, runnable));
+        return new Task(this, plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> runTracked(runnable)));
     }
 
     /**
@@ -248,14 +466,14 @@ public final class BackpackScheduler {
             if (isNotAccepting())
                 throw new RuntimeException("Unable to schedule a task while cancelTasks() is being called!");
 
-            return new Task(this, plugin.getServer().getGlobalRegionScheduler().runAtFixedRate(plugin, task -> runnable.run(), delay <= 0L ? 1L : delay, period));
+            return new Task(this, plugin.getServer().getGlobalRegionScheduler().runAtFixedRate(plugin, task -> runTracked(runnable), delay <= 0L ? 1L : delay, period));
         }
 
-        return new Task(this, plugin.getServer().getScheduler().runTaskTimer(plugin, runnable, delay, period));
+        return new Task(this, plugin.getServer().getScheduler().runTaskTimer(plugin, () -> runTracked(runnable), delay, period));
     }
 
     /**
-     * Schedules an async repeated task to be executed on the global region scheduler.
+     * Schedules an async repeated task to be executed off the tick threads.
      * @param runnable The task to execute
      * @param delay The delay in ticks from task initialization
      * @param period The period in ticks to execute the task
@@ -266,10 +484,10 @@ public final class BackpackScheduler {
             if (isNotAccepting())
                 throw new RuntimeException("Unable to schedule a task while cancelTasks() is being called!");
 
-            return new Task(this, plugin.getServer().getGlobalRegionScheduler().runAtFixedRate(plugin, task -> runnable.run(), delay <= 0L ? 1L : delay, period));
+            return new Task(this, plugin.getServer().getAsyncScheduler().runAtFixedRate(plugin, task -> runTracked(runnable), ticksToMillis(delay <= 0L ? 1L : delay), ticksToMillis(period), TimeUnit.MILLISECONDS));
         }
 
-        return new Task(this, plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, runnable, delay, period));
+        return new Task(this, plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, () -> runTracked(runnable), delay, period));
     }
 
     /**
@@ -285,10 +503,10 @@ public final class BackpackScheduler {
             if (isNotAccepting())
                 throw new RuntimeException("Unable to schedule a task while cancelTasks() is being called!");
 
-            return new Task(this, plugin.getServer().getRegionScheduler().runAtFixedRate(plugin, location, task -> runnable.run(), delay <= 0L ? 1L : delay, period));
+            return new Task(this, plugin.getServer().getRegionScheduler().runAtFixedRate(plugin, location, task -> runTracked(runnable), delay <= 0L ? 1L : delay, period));
         }
 
-        return new Task(this, plugin.getServer().getScheduler().runTaskTimer(plugin, runnable, delay, period));
+        return new Task(this, plugin.getServer().getScheduler().runTaskTimer(plugin, () -> runTracked(runnable), delay, period));
     }
 
     /**
@@ -304,10 +522,10 @@ public final class BackpackScheduler {
             if (isNotAccepting())
                 throw new RuntimeException("Unable to schedule a task while cancelTasks() is being called!");
 
-            return new Task(this, plugin.getServer().getRegionScheduler().runAtFixedRate(plugin, location, task -> runnable.run(), delay <= 0L ? 1L : delay, period));
+            return new Task(this, plugin.getServer().getRegionScheduler().runAtFixedRate(plugin, location, task -> runTracked(runnable), delay <= 0L ? 1L : delay, period));
         }
 
-        return new Task(this, plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, runnable, delay, period));
+        return new Task(this, plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, () -> runTracked(runnable), delay, period));
     }
 
     /**
@@ -323,10 +541,10 @@ public final class BackpackScheduler {
             if (isNotAccepting())
                 throw new RuntimeException("Unable to schedule a task while cancelTasks() is being called!");
 
-            return new Task(this, plugin.getServer().getRegionScheduler().runAtFixedRate(plugin, chunk.getWorld(), chunk.getX(), chunk.getZ(), task -> runnable.run(), delay <= 0L ? 1L : delay, period));
+            return new Task(this, plugin.getServer().getRegionScheduler().runAtFixedRate(plugin, chunk.getWorld(), chunk.getX(), chunk.getZ(), task -> runTracked(runnable), delay <= 0L ? 1L : delay, period));
         }
 
-        return new Task(this, plugin.getServer().getScheduler().runTaskTimer(plugin, runnable, delay, period));
+        return new Task(this, plugin.getServer().getScheduler().runTaskTimer(plugin, () -> runTracked(runnable), delay, period));
     }
 
     /**
@@ -342,10 +560,10 @@ public final class BackpackScheduler {
             if (isNotAccepting())
                 throw new RuntimeException("Unable to schedule a task while cancelTasks() is being called!");
 
-            return new Task(this, plugin.getServer().getRegionScheduler().runAtFixedRate(plugin, chunk.getWorld(), chunk.getX(), chunk.getZ(), task -> runnable.run(), delay <= 0L ? 1L : delay, period));
+            return new Task(this, plugin.getServer().getRegionScheduler().runAtFixedRate(plugin, chunk.getWorld(), chunk.getX(), chunk.getZ(), task -> runTracked(runnable), delay <= 0L ? 1L : delay, period));
         }
 
-        return new Task(this, plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, runnable, delay, period));
+        return new Task(this, plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, () -> runTracked(runnable), delay, period));
     }
 
     /**
@@ -354,17 +572,17 @@ public final class BackpackScheduler {
      * @param entity The entity to execute the task from
      * @param delay The delay in ticks from task initialization
      * @param period The period in ticks to execute the task
-     * @return The scheduled task wrapper for Bukkit or Folia
+     * @return The scheduled task wrapper for Bukkit or Folia, or null if the entity was already removed
      */
     public Task runTaskTimer(Runnable runnable, Entity entity, long delay, long period) {
         if (isFolia()) {
             if (isNotAccepting())
                 throw new RuntimeException("Unable to schedule a task while cancelTasks() is being called!");
 
-            return new Task(this, entity.getScheduler().runAtFixedRate(plugin, task -> runnable.run(), null, delay <= 0L ? 1L : delay, period));
+            return scheduleOnEntity(retiredHook -> entity.getScheduler().runAtFixedRate(plugin, task -> runTracked(runnable), retiredHook, delay <= 0L ? 1L : delay, period), null);
         }
 
-        return new Task(this, plugin.getServer().getScheduler().runTaskTimer(plugin, runnable, delay, period));
+        return new Task(this, plugin.getServer().getScheduler().runTaskTimer(plugin, () -> runTracked(runnable), delay, period));
     }
 
     /**
@@ -373,17 +591,17 @@ public final class BackpackScheduler {
      * @param entity The entity to execute the task from
      * @param delay The delay in ticks from task initialization
      * @param period The period in ticks to execute the task
-     * @return The scheduled task wrapper for Bukkit or Folia
+     * @return The scheduled task wrapper for Bukkit or Folia, or null if the entity was already removed
      */
     public Task runTaskTimerAsync(Runnable runnable, Entity entity, long delay, long period) {
         if (isFolia()) {
             if (isNotAccepting())
                 throw new RuntimeException("Unable to schedule a task while cancelTasks() is being called!");
 
-            return new Task(this, entity.getScheduler().runAtFixedRate(plugin, task -> runnable.run(), null, delay <= 0L ? 1L : delay, period));
+            return scheduleOnEntity(retiredHook -> entity.getScheduler().runAtFixedRate(plugin, task -> runTracked(runnable), retiredHook, delay <= 0L ? 1L : delay, period), null);
         }
 
-        return new Task(this, plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, runnable, delay, period));
+        return new Task(this, plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, () -> runTracked(runnable), delay, period));
     }
 
     /**
@@ -398,16 +616,19 @@ public final class BackpackScheduler {
                 throw new RuntimeException("Unable to schedule a task while cancelTasks() is being called!");
 
             return new Task(this, plugin.getServer().getGlobalRegionScheduler().runDelayed(plugin, task -> {
-                runnable.run();
-                this.foliaTasks.removeIf(t -> t.foliaTask == task);
+                try {
+                    runTracked(runnable);
+                } finally {
+                    finish(task);
+                }
             }, delay <= 0L ? 1L : delay));
         }
 
-        return new Task(this, plugin.getServer().getScheduler().runTaskLater(plugin, runnable, delay));
+        return new Task(this, plugin.getServer().getScheduler().runTaskLater(plugin, () -> runTracked(runnable), delay));
     }
 
     /**
-     * Schedules an async repeated task to be executed on the global region scheduler.
+     * Schedules an async delayed task to be executed off the tick threads.
      * @param runnable The task to execute
      * @param delay The delay in ticks from task initialization
      * @return The scheduled task wrapper for Bukkit or Folia
@@ -417,13 +638,16 @@ public final class BackpackScheduler {
             if (isNotAccepting())
                 throw new RuntimeException("Unable to schedule a task while cancelTasks() is being called!");
 
-            return new Task(this, plugin.getServer().getGlobalRegionScheduler().runDelayed(plugin, task -> {
-                runnable.run();
-                this.foliaTasks.removeIf(t -> t.foliaTask == task);
-            }, delay <= 0L ? 1L : delay));
+            return new Task(this, plugin.getServer().getAsyncScheduler().runDelayed(plugin, task -> {
+                try {
+                    runTracked(runnable);
+                } finally {
+                    finish(task);
+                }
+            }, ticksToMillis(delay <= 0L ? 1L : delay), TimeUnit.MILLISECONDS));
         }
 
-        return new Task(this, plugin.getServer().getScheduler().runTaskLaterAsynchronously(plugin, runnable, delay));
+        return new Task(this, plugin.getServer().getScheduler().runTaskLaterAsynchronously(plugin, () -> runTracked(runnable), delay));
     }
 
     /**
@@ -439,12 +663,15 @@ public final class BackpackScheduler {
                 throw new RuntimeException("Unable to schedule a task while cancelTasks() is being called!");
 
             return new Task(this, plugin.getServer().getRegionScheduler().runDelayed(plugin, location, task -> {
-                runnable.run();
-                this.foliaTasks.removeIf(t -> t.foliaTask == task);
+                try {
+                    runTracked(runnable);
+                } finally {
+                    finish(task);
+                }
             }, delay <= 0L ? 1L : delay));
         }
 
-        return new Task(this, plugin.getServer().getScheduler().runTaskLater(plugin, runnable, delay));
+        return new Task(this, plugin.getServer().getScheduler().runTaskLater(plugin, () -> runTracked(runnable), delay));
     }
 
     /**
@@ -460,12 +687,15 @@ public final class BackpackScheduler {
                 throw new RuntimeException("Unable to schedule a task while cancelTasks() is being called!");
 
             return new Task(this, plugin.getServer().getRegionScheduler().runDelayed(plugin, location, task -> {
-                runnable.run();
-                this.foliaTasks.removeIf(t -> t.foliaTask == task);
+                try {
+                    runTracked(runnable);
+                } finally {
+                    finish(task);
+                }
             }, delay <= 0L ? 1L : delay));
         }
 
-        return new Task(this, plugin.getServer().getScheduler().runTaskLaterAsynchronously(plugin, runnable, delay));
+        return new Task(this, plugin.getServer().getScheduler().runTaskLaterAsynchronously(plugin, () -> runTracked(runnable), delay));
     }
 
     /**
@@ -481,12 +711,15 @@ public final class BackpackScheduler {
                 throw new RuntimeException("Unable to schedule a task while cancelTasks() is being called!");
 
             return new Task(this, plugin.getServer().getRegionScheduler().runDelayed(plugin, chunk.getWorld(), chunk.getX(), chunk.getZ(), task -> {
-                runnable.run();
-                this.foliaTasks.removeIf(t -> t.foliaTask == task);
+                try {
+                    runTracked(runnable);
+                } finally {
+                    finish(task);
+                }
             }, delay <= 0L ? 1L : delay));
         }
 
-        return new Task(this, plugin.getServer().getScheduler().runTaskLater(plugin, runnable, delay));
+        return new Task(this, plugin.getServer().getScheduler().runTaskLater(plugin, () -> runTracked(runnable), delay));
     }
 
     /**
@@ -502,12 +735,15 @@ public final class BackpackScheduler {
                 throw new RuntimeException("Unable to schedule a task while cancelTasks() is being called!");
 
             return new Task(this, plugin.getServer().getRegionScheduler().runDelayed(plugin, chunk.getWorld(), chunk.getX(), chunk.getZ(), task -> {
-                runnable.run();
-                this.foliaTasks.removeIf(t -> t.foliaTask == task);
+                try {
+                    runTracked(runnable);
+                } finally {
+                    finish(task);
+                }
             }, delay <= 0L ? 1L : delay));
         }
 
-        return new Task(this, plugin.getServer().getScheduler().runTaskLaterAsynchronously(plugin, runnable, delay));
+        return new Task(this, plugin.getServer().getScheduler().runTaskLaterAsynchronously(plugin, () -> runTracked(runnable), delay));
     }
 
     /**
@@ -515,20 +751,23 @@ public final class BackpackScheduler {
      * @param runnable The task to execute
      * @param entity The entity to execute the task from
      * @param delay The delay in ticks from task initialization
-     * @return The scheduled task wrapper for Bukkit or Folia
+     * @return The scheduled task wrapper for Bukkit or Folia, or null if the entity was already removed
      */
     public Task runTaskLater(Runnable runnable, Entity entity, long delay) {
         if (isFolia()) {
             if (isNotAccepting())
                 throw new RuntimeException("Unable to schedule a task while cancelTasks() is being called!");
 
-            return new Task(this, entity.getScheduler().runDelayed(plugin, task -> {
-                runnable.run();
-                this.foliaTasks.removeIf(t -> t.foliaTask == task);
-            }, null, delay <= 0L ? 1L : delay));
+            return scheduleOnEntity(retiredHook -> entity.getScheduler().runDelayed(plugin, task -> {
+                try {
+                    runTracked(runnable);
+                } finally {
+                    finish(task);
+                }
+            }, retiredHook, delay <= 0L ? 1L : delay), null);
         }
 
-        return new Task(this, plugin.getServer().getScheduler().runTaskLater(plugin, runnable, delay));
+        return new Task(this, plugin.getServer().getScheduler().runTaskLater(plugin, () -> runTracked(runnable), delay));
     }
 
     /**
@@ -536,20 +775,155 @@ public final class BackpackScheduler {
      * @param runnable The task to execute
      * @param entity The entity to execute the task from
      * @param delay The delay in ticks from task initialization
-     * @return The scheduled task wrapper for Bukkit or Folia
+     * @return The scheduled task wrapper for Bukkit or Folia, or null if the entity was already removed
      */
     public Task runTaskLaterAsync(Runnable runnable, Entity entity, long delay) {
         if (isFolia()) {
             if (isNotAccepting())
                 throw new RuntimeException("Unable to schedule a task while cancelTasks() is being called!");
 
-            return new Task(this, entity.getScheduler().runDelayed(plugin, task -> {
-                runnable.run();
-                this.foliaTasks.removeIf(t -> t.foliaTask == task);
-            }, null, delay <= 0L ? 1L : delay));
+            return scheduleOnEntity(retiredHook -> entity.getScheduler().runDelayed(plugin, task -> {
+                try {
+                    runTracked(runnable);
+                } finally {
+                    finish(task);
+                }
+            }, retiredHook, delay <= 0L ? 1L : delay), null);
+        }
+
+        return new Task(this, plugin.getServer().getScheduler().runTaskLaterAsynchronously(plugin, () -> runTracked(runnable), delay));
+    }
+
+    /**
+     * Schedule a task on an entity scheduler and wrap it.
+     * Folia does not schedule anything for an entity that was already removed, and it never
+     * runs the task of an entity removed later on. Either way the retired task runs instead and
+     * the wrapper stops being tracked.
+     * @param schedule Schedules the task, given the callback to pass as its retired task
+     * @param retired The task to execute if the entity was removed, or null
+     * @return The scheduled task wrapper, or null if the entity was already removed
+     */
+    private Task scheduleOnEntity(Function<Runnable, ScheduledTask> schedule, Runnable retired) {
+        AtomicReference<Task> wrapper = new AtomicReference<>();
+        AtomicBoolean wasRetired = new AtomicBoolean();
+        ScheduledTask scheduled = schedule.apply(() -> {
+            try {
+                if (retired != null)
+                    retired.run();
+            } finally {
+                wasRetired.set(true);
+                untrack(wrapper.get());
+            }
+        });
+        if (scheduled == null) {
+            if (retired != null)
+                retired.run();
+            return null;
         }
 
-        return new Task(this, plugin.getServer().getScheduler().runTaskLaterAsynchronously(plugin, runnable, delay));
+        Task task = new Task(this, scheduled);
+        wrapper.set(task);
+        // The entity may have been removed before the wrapper was published
+        if (wasRetired.get())
+            untrack(task);
+        return task;
+    }
+
+    /**
+     * Stop tracking a Folia task that ran, called at the end of its callback.
+     * The callback may run before its wrapper was registered, so the task is marked first
+     * and the wrapper removes itself if it finds the mark after registering.
+     * @param task The task that ran
+     */
+    private void finish(ScheduledTask task) {
+        finishedTasks.add(task);
+        if (foliaTasks.remove(task) != null)
+            finishedTasks.remove(task);
+    }
+
+    /**
+     * Stop tracking a Folia task wrapper.
+     * @param task The wrapper, may be null
+     */
+    private void untrack(Task task) {
+        if (task != null)
+            foliaTasks.remove(task.foliaTask, task);
+    }
+
+    /**
+     * Run a scheduled task and count it as running while it executes.
+     * @param runnable The task to execute
+     */
+    private void runTracked(Runnable runnable) {
+        runningTasks.incrementAndGet();
+        try {
+            runnable.run();
+        } finally {
+            runningTasks.decrementAndGet();
+            completedTasks.increment();
+        }
+    }
+
+    /**
+     * Get the number of tasks scheduled since the plugin was enabled. A repeating task counts once.
+     * @return The number of scheduled tasks
+     */
+    public long getScheduledTaskCount() {
+        return scheduledTasks.sum();
+    }
+
+    /**
+     * Get the number of task executions currently in progress.
+     * @return The number of running tasks
+     */
+    public int getRunningTaskCount() {
+        return runningTasks.get();
+    }
+
+    /**
+     * Get the number of finished task executions. A repeating task counts once per run.
+     * @return The number of completed executions
+     */
+    public long getCompletedTaskCount() {
+        return completedTasks.sum();
+    }
+
+    /**
+     * Get the number of Folia tasks that are scheduled but not finished or cancelled yet.
+     * @return The number of outstanding tasks, always 0 on Bukkit
+     */
+    public int getPendingTaskCount() {
+        return isFolia() ? foliaTasks.size() : 0;
+    }
+
+    /**
+     * Get the number of IO tasks waiting in the queue of the IO executor.
+     * @return The IO queue length
+     */
+    public int getIoQueueSize() {
+        return ioExecutor.getQueue().size();
+    }
+
+    /**
+     * Warn once when the IO queue grows past the warning size, and again after it recovered.
+     */
+    private void checkIoBacklog() {
+        int size = ioExecutor.getQueue().size();
+        if (size >= IO_QUEUE_WARNING) {
+            if (ioBacklogged.compareAndSet(false, true))
+                plugin.getLogger().warning(size + " IO tasks are queued, the disk cannot keep up!");
+        } else if (size < IO_QUEUE_WARNING / 2) {
+            ioBacklogged.set(false);
+        }
+    }
+
+    /**
+     * Convert server ticks to milliseconds for the Folia async scheduler.
+     * @param ticks The number of ticks
+     * @return The duration in milliseconds
+     */
+    private static long ticksToMillis(long ticks) {
+        return ticks * 50L;
     }
 
     /**
@@ -568,13 +942,22 @@ public final class BackpackScheduler {
         private Task(BackpackScheduler owningScheduler, BukkitTask bukkitTask) {
             this.owningScheduler = owningScheduler;
             this.bukkitTask = bukkitTask;
+            owningScheduler.scheduledTasks.increment();
         }
 
         private Task(BackpackScheduler owningScheduler, ScheduledTask foliaTask) {
+            if (foliaTask == null)
+                throw new IllegalArgumentException("Folia did not schedule the task, its entity was removed!");
+
             this.owningScheduler = owningScheduler;
             this.foliaTask = foliaTask;
 
-            owningScheduler.foliaTasks.add(this);
+            owningScheduler.scheduledTasks.increment();
+            owningScheduler.foliaTasks.put(foliaTask, this);
+
+            // The callback may have finished on another thread before the put, see finish()
+            if (owningScheduler.finishedTasks.remove(foliaTask))
+                owningScheduler.foliaTasks.remove(foliaTask, this);
         }
 
         /**
@@ -622,7 +1005,7 @@ public final class BackpackScheduler {
          */
         public void cancel() {
             if (isFolia()) {
-                this.owningScheduler.foliaTasks.remove(this);
+                this.owningScheduler.foliaTasks.remove(foliaTask, this);
             }
 
             _internalCancel();
@@ -0,0 +1,51 @@
+package com.shweit.expendablebackpacks.util;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import org.bukkit.persistence.PersistentDataAdapterContext;
+import org.bukkit.persistence.PersistentDataType;
+
+/**
+ * Stores a UUID in a persistent data container as a 16-byte array
+ * (most significant bits first) instead of its 36 character string form.
+ */
+public final class UuidDataType implements PersistentDataType<byte[], UUID> {
+
+    /**
+     * Shared instance, the type has no state.
+     */
+    public static final UuidDataType INSTANCE = new UuidDataType();
+
+    private static final int LENGTH = 16;
+
+    private UuidDataType() {
+    }
+
+    @Override
+    public Class<byte[]> getPrimitiveType() {
+        return byte[].class;
+    }
+
+    @Override
+    public Class<UUID> getComplexType() {
+        return UUID.class;
+    }
+
+    @Override
+    public byte[] toPrimitive(UUID complex, PersistentDataAdapterContext context) {
+        return ByteBuffer.allocate(LENGTH)
+            .putLong(complex.getMostSignificantBits())
+            .putLong(complex.getLeastSignificantBits())
+            .array();
+    }
+
+    @Override
+    public UUID fromPrimitive(byte[] primitive, PersistentDataAdapterContext context) {
+        if (primitive.length != LENGTH) {
+            throw new IllegalArgumentException("Expected " + LENGTH + " bytes, got "
+                + primitive.length);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(primitive);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+}
@@ -0,0 +1,191 @@
+package com.shweit.expendablebackpacks.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.UUID;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link BackpackSnapshot}, mainly how pending snapshots are combined.
+ */
+class BackpackSnapshotTest {
+
+    private static final UUID BACKPACK = UUID.fromString("00000000-0000-0000-0000-000000000001");
+
+    /**
+     * Storage that only records which write a snapshot turned into.
+     */
+    private static final class RecordingStorage implements BackpackStorage {
+
+        private final List<String> writes = new ArrayList<>();
+
+        @Override
+        public String getName() {
+            return "recording";
+        }
+
+        @Override
+        public ItemStack[] load(UUID backpackUuid) {
+            return null;
+        }
+
+        @Override
+        public void store(UUID backpackUuid, ItemStack[] contents) {
+            writes.add("store " + contents.length);
+        }
+
+        @Override
+        public void storeDelta(UUID backpackUuid, ItemStack[] contents, BitSet changedSlots) {
+            writes.add("delta " + changedSlots);
+        }
+
+        @Override
+        public void delete(UUID backpackUuid) {
+            writes.add("delete");
+        }
+
+        @Override
+        public boolean exists(UUID backpackUuid) {
+            return false;
+        }
+
+        @Override
+        public List<UUID> keys() {
+            return List.of();
+        }
+    }
+
+    /**
+     * Create an inventory that only answers getContents.
+     *
+     * @param contents the contents to return
+     * @return the inventory
+     */
+    static Inventory inventory(ItemStack[] contents) {
+        return (Inventory) Proxy.newProxyInstance(Inventory.class.getClassLoader(),
+            new Class<?>[] {Inventory.class}, (proxy, method, args) -> {
+                if (method.getName().equals("getContents")) {
+                    return contents.clone();
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+    }
+
+    /**
+     * Write a snapshot and return the recorded writes.
+     *
+     * @param snapshot the snapshot
+     * @return the recorded writes
+     */
+    private static List<String> write(BackpackSnapshot snapshot) throws IOException {
+        RecordingStorage storage = new RecordingStorage();
+        snapshot.writeTo(storage);
+        return storage.writes;
+    }
+
+    @Test
+    void captureWithoutPreviousIsFull() {
+        BackpackSnapshot snapshot = BackpackSnapshot.capture(BACKPACK, inventory(new ItemStack[9]));
+
+        assertTrue(snapshot.isFull());
+        assertFalse(snapshot.isDeletion());
+        assertFalse(snapshot.isUnchanged());
+        assertEquals(9, snapshot.getContents().length);
+    }
+
+    @Test
+    void captureOfUnchangedInventoryIsUnchanged() {
+        BackpackSnapshot previous = BackpackSnapshot.of(BACKPACK, new ItemStack[9]);
+        BackpackSnapshot snapshot = BackpackSnapshot.capture(BACKPACK,
+            inventory(new ItemStack[9]), previous);
+
+        assertFalse(snapshot.isFull());
+        assertTrue(snapshot.isUnchanged());
+    }
+
+    @Test
+    void captureAfterResizeIsFull() {
+        BackpackSnapshot previous = BackpackSnapshot.of(BACKPACK, new ItemStack[9]);
+        BackpackSnapshot snapshot = BackpackSnapshot.capture(BACKPACK,
+            inventory(new ItemStack[18]), previous);
+
+        assertTrue(snapshot.isFull());
+    }
+
+    @Test
+    void deletionHasNoContents() throws IOException {
+        BackpackSnapshot deletion = BackpackSnapshot.deletion(BACKPACK);
+
+        assertTrue(deletion.isDeletion());
+        assertNull(deletion.getContents());
+        assertEquals(List.of("delete"), write(deletion));
+    }
+
+    @Test
+    void newerFullSnapshotWins() throws IOException {
+        BackpackSnapshot older = BackpackSnapshot.of(BACKPACK, new ItemStack[9]);
+        BackpackSnapshot newer = BackpackSnapshot.of(BACKPACK, new ItemStack[27]);
+
+        assertSame(newer, BackpackSnapshot.combine(older, newer));
+        assertEquals(List.of("store 27"), write(BackpackSnapshot.combine(older, newer)));
+    }
+
+    @Test
+    void newerDeletionWins() throws IOException {
+        BackpackSnapshot older = BackpackSnapshot.of(BACKPACK, new ItemStack[9]);
+
+        assertEquals(List.of("delete"),
+            write(BackpackSnapshot.combine(older, BackpackSnapshot.deletion(BACKPACK))));
+    }
+
+    @Test
+    void deltaAfterUnwrittenFullSnapshotIsWrittenInFull() throws IOException {
+        BackpackSnapshot older = BackpackSnapshot.of(BACKPACK, new ItemStack[9]);
+        BackpackSnapshot newer = BackpackSnapshot.capture(BACKPACK,
+            inventory(new ItemStack[9]), older);
+
+        BackpackSnapshot combined = BackpackSnapshot.combine(older, newer);
+
+        assertTrue(combined.isFull());
+        assertEquals(List.of("store 9"), write(combined));
+    }
+
+    @Test
+    void deltaAfterUnwrittenDeletionIsWrittenInFull() throws IOException {
+        BackpackSnapshot baseline = BackpackSnapshot.of(BACKPACK, new ItemStack[9]);
+        BackpackSnapshot newer = BackpackSnapshot.capture(BACKPACK,
+            inventory(new ItemStack[9]), baseline);
+
+        BackpackSnapshot combined = BackpackSnapshot.combine(
+            BackpackSnapshot.deletion(BACKPACK), newer);
+
+        assertTrue(combined.isFull());
+        assertEquals(List.of("store 9"), write(combined));
+    }
+
+    @Test
+    void deltasStayDeltas() throws IOException {
+        BackpackSnapshot baseline = BackpackSnapshot.of(BACKPACK, new ItemStack[9]);
+        BackpackSnapshot older = BackpackSnapshot.capture(BACKPACK,
+            inventory(new ItemStack[9]), baseline);
+        BackpackSnapshot newer = BackpackSnapshot.capture(BACKPACK,
+            inventory(new ItemStack[9]), older);
+
+        BackpackSnapshot combined = BackpackSnapshot.combine(older, newer);
+
+        assertFalse(combined.isFull());
+        assertTrue(combined.isUnchanged());
+        assertEquals(List.of("delta {}"), write(combined));
+    }
+}
@@ -0,0 +1,205 @@
+package com.shweit.expendablebackpacks.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.shweit.expendablebackpacks.storage.codec.BinaryBackpackCodec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Logger;
+import org.bukkit.inventory.ItemStack;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for {@link JournalBackpackStorage} replay and compaction.
+ * Records hold empty slots only, serializing real items needs a running server.
+ */
+class JournalBackpackStorageTest {
+
+    private static final UUID FIRST = UUID.fromString("00000000-0000-0000-0000-000000000001");
+    private static final UUID SECOND = UUID.fromString("00000000-0000-0000-0000-000000000002");
+    private static final Logger LOGGER = Logger.getLogger(JournalBackpackStorageTest.class.getName());
+
+    @TempDir
+    Path root;
+
+    /**
+     * Open the journal under test with compactions running on the calling thread.
+     *
+     * @return the journal
+     */
+    private JournalBackpackStorage open() throws IOException {
+        return new JournalBackpackStorage(root.toFile(), new BinaryBackpackCodec(),
+            64L * 1024L * 1024L, 0.5, 16, Runnable::run, LOGGER);
+    }
+
+    /**
+     * Get the only segment file of the journal.
+     *
+     * @return the segment path
+     */
+    private Path segment() throws IOException {
+        try (var files = Files.list(root)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".log"))
+                .findFirst().orElseThrow();
+        }
+    }
+
+    @Test
+    void replayRestoresRecords() throws IOException {
+        JournalBackpackStorage journal = open();
+        journal.store(FIRST, new ItemStack[9]);
+        journal.store(SECOND, new ItemStack[27]);
+        journal.store(FIRST, new ItemStack[18]);
+        journal.close();
+
+        JournalBackpackStorage reopened = open();
+        assertEquals(18, reopened.load(FIRST).length);
+        assertEquals(27, reopened.load(SECOND).length);
+        assertEquals(Set.of(FIRST, SECOND), Set.copyOf(reopened.keys()));
+        reopened.close();
+    }
+
+    @Test
+    void replayForgetsDeletedBackpacks() throws IOException {
+        JournalBackpackStorage journal = open();
+        journal.store(FIRST, new ItemStack[9]);
+        journal.delete(FIRST);
+        journal.close();
+
+        JournalBackpackStorage reopened = open();
+        assertFalse(reopened.exists(FIRST));
+        assertNull(reopened.load(FIRST));
+        reopened.close();
+    }
+
+    @Test
+    void replayAppliesDeltaChain() throws IOException {
+        BitSet changed = new BitSet();
+        changed.set(30);
+
+        JournalBackpackStorage journal = open();
+        journal.store(FIRST, new ItemStack[27]);
+        journal.storeDelta(FIRST, new ItemStack[54], changed);
+        journal.close();
+
+        JournalBackpackStorage reopened = open();
+        assertEquals(54, reopened.load(FIRST).length);
+        reopened.close();
+    }
+
+    @Test
+    void tornTailIsCutOff() throws IOException {
+        JournalBackpackStorage journal = open();
+        journal.store(FIRST, new ItemStack[9]);
+        journal.store(SECOND, new ItemStack[9]);
+        journal.close();
+
+        // Drop the last byte, as if the server died halfway through the second record
+        Path segment = segment();
+        long intact;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            intact = channel.size();
+            channel.truncate(intact - 1);
+        }
+
+        JournalBackpackStorage reopened = open();
+        assertNotNull(reopened.load(FIRST));
+        assertFalse(reopened.exists(SECOND));
+        reopened.close();
+        assertTrue(Files.size(segment) < intact - 1);
+    }
+
+    @Test
+    void tornTailDoesNotHideEarlierVersion() throws IOException {
+        JournalBackpackStorage journal = open();
+        journal.store(FIRST, new ItemStack[9]);
+        journal.store(FIRST, new ItemStack[27]);
+        journal.close();
+
+        try (FileChannel channel = FileChannel.open(segment(), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        JournalBackpackStorage reopened = open();
+        assertEquals(9, reopened.load(FIRST).length);
+        reopened.close();
+    }
+
+    @Test
+    void corruptTailIsCutOff() throws IOException {
+        JournalBackpackStorage journal = open();
+        journal.store(FIRST, new ItemStack[9]);
+        journal.store(SECOND, new ItemStack[9]);
+        journal.close();
+
+        // Flip the last byte so the checksum of the second record no longer matches
+        Path segment = segment();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, channel.size() - 1);
+            last.flip();
+            last.put(0, (byte) ~last.get(0));
+            channel.write(last, channel.size() - 1);
+        }
+
+        JournalBackpackStorage reopened = open();
+        assertTrue(reopened.exists(FIRST));
+        assertFalse(reopened.exists(SECOND));
+
+        // New writes go after the cut and survive the next replay
+        reopened.store(SECOND, new ItemStack[18]);
+        reopened.close();
+        JournalBackpackStorage again = open();
+        assertEquals(18, again.load(SECOND).length);
+        again.close();
+    }
+
+    @Test
+    void compactionKeepsLiveRecords() throws IOException {
+        BitSet changed = new BitSet();
+        changed.set(1);
+
+        JournalBackpackStorage journal = open();
+        for (int i = 0; i < 10; i++) {
+            journal.store(FIRST, new ItemStack[9]);
+        }
+        journal.store(SECOND, new ItemStack[27]);
+        journal.storeDelta(SECOND, new ItemStack[36], changed);
+        journal.compact();
+        assertEquals(9, journal.load(FIRST).length);
+        assertEquals(36, journal.load(SECOND).length);
+        journal.close();
+
+        JournalBackpackStorage reopened = open();
+        assertEquals(9, reopened.load(FIRST).length);
+        assertEquals(36, reopened.load(SECOND).length);
+        reopened.close();
+    }
+
+    @Test
+    void unfinishedCompactionIsDeletedOnOpen() throws IOException {
+        JournalBackpackStorage journal = open();
+        journal.store(FIRST, new ItemStack[9]);
+        journal.close();
+        Path leftover = root.resolve("segment-1.log.compact");
+        Files.write(leftover, new byte[] {1, 2, 3});
+
+        JournalBackpackStorage reopened = open();
+        assertFalse(Files.exists(leftover));
+        assertEquals(9, reopened.load(FIRST).length);
+        reopened.close();
+    }
+}
@@ -0,0 +1,134 @@
+package com.shweit.expendablebackpacks.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.shweit.expendablebackpacks.storage.codec.BinaryBackpackCodec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.logging.Logger;
+import org.bukkit.inventory.ItemStack;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.CleanupMode;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for {@link MappedBackpackStorage} recovery.
+ * Records hold empty slots only, serializing real items needs a running server.
+ */
+class MappedBackpackStorageTest {
+
+    private static final int MB = 1024 * 1024;
+    private static final Logger LOGGER = Logger.getLogger(MappedBackpackStorageTest.class.getName());
+
+    // Mappings are only released by the garbage collector, and Windows cannot delete mapped files
+    @TempDir(cleanup = CleanupMode.NEVER)
+    Path root;
+
+    /**
+     * Open the segment store under test.
+     *
+     * @param segmentSize the configured segment size
+     * @return the store
+     */
+    private MappedBackpackStorage open(int segmentSize) throws IOException {
+        return new MappedBackpackStorage(root.toFile(), new BinaryBackpackCodec(), segmentSize, LOGGER);
+    }
+
+    /**
+     * Get a distinct UUID for a record number.
+     *
+     * @param record the record number
+     * @return the UUID
+     */
+    private static UUID uuid(int record) {
+        return new UUID(0L, record);
+    }
+
+    @Test
+    void reopenRestoresRecords() throws IOException {
+        MappedBackpackStorage storage = open(MB);
+        storage.store(uuid(1), new ItemStack[9]);
+        storage.store(uuid(2), new ItemStack[27]);
+        storage.store(uuid(1), new ItemStack[18]);
+        storage.delete(uuid(2));
+        storage.close();
+
+        MappedBackpackStorage reopened = open(MB);
+        assertEquals(18, reopened.load(uuid(1)).length);
+        assertNull(reopened.load(uuid(2)));
+        reopened.close();
+    }
+
+    @Test
+    void reopenWithSmallerConfiguredSizeKeepsEveryRecord() throws IOException {
+        // Enough 64 byte slots to reach past the first megabyte of the segment
+        int records = 20_000;
+        MappedBackpackStorage storage = open(4 * MB);
+        for (int record = 0; record < records; record++) {
+            storage.store(uuid(record), new ItemStack[0]);
+        }
+        storage.close();
+
+        MappedBackpackStorage reopened = open(MB);
+        assertEquals(records, reopened.keys().size());
+        assertEquals(0, reopened.load(uuid(records - 1)).length);
+        assertEquals(4L * MB, Files.size(root.resolve("segment-0.dat")));
+        reopened.close();
+    }
+
+    @Test
+    void recordsSurviveSegmentRoll() throws IOException {
+        int records = 20_000;
+        MappedBackpackStorage storage = open(MB);
+        for (int record = 0; record < records; record++) {
+            storage.store(uuid(record), new ItemStack[0]);
+        }
+        assertTrue(Files.exists(root.resolve("segment-1.dat")));
+        storage.close();
+
+        MappedBackpackStorage reopened = open(MB);
+        assertEquals(records, reopened.keys().size());
+        for (int record = 0; record < records; record += 997) {
+            assertEquals(0, reopened.load(uuid(record)).length);
+        }
+        reopened.close();
+    }
+
+    @Test
+    void closedStoreRejectsAccess() throws IOException {
+        MappedBackpackStorage storage = open(MB);
+        storage.store(uuid(1), new ItemStack[9]);
+        storage.close();
+
+        assertThrows(IOException.class, () -> storage.load(uuid(1)));
+        assertThrows(IOException.class, () -> storage.store(uuid(1), new ItemStack[9]));
+    }
+
+    @Test
+    void tornRecordFallsBackToPreviousCopy() throws IOException {
+        MappedBackpackStorage storage = open(MB);
+        storage.store(uuid(1), new ItemStack[9]);
+        storage.sync();
+        // Not synced yet, so the first copy is still live on disk
+        storage.store(uuid(1), new ItemStack[18]);
+
+        // Both records fit the smallest slot: segment header, first copy, second copy
+        try (FileChannel channel = FileChannel.open(root.resolve("segment-0.dat"),
+            StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {(byte) 0xFF}), 128 + 48);
+        }
+
+        // Reopened without a sync or close, as after a crash
+        MappedBackpackStorage reopened = open(MB);
+        assertEquals(9, reopened.load(uuid(1)).length);
+        reopened.close();
+    }
+}
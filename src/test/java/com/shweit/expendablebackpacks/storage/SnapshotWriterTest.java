@@ -0,0 +1,194 @@
+package com.shweit.expendablebackpacks.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.logging.Logger;
+import org.bukkit.inventory.ItemStack;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link SnapshotWriter} batching and failure handling.
+ */
+class SnapshotWriterTest {
+
+    private static final UUID BACKPACK = UUID.fromString("00000000-0000-0000-0000-000000000001");
+    private static final UUID OTHER = UUID.fromString("00000000-0000-0000-0000-000000000002");
+    private static final Logger LOGGER = Logger.getLogger(SnapshotWriterTest.class.getName());
+
+    /**
+     * Storage whose writes fail while {@link #failing} is set.
+     */
+    private static final class FlakyStorage implements BackpackStorage {
+
+        private final List<String> writes = new ArrayList<>();
+        private boolean failing = true;
+        private int syncs;
+
+        @Override
+        public String getName() {
+            return "flaky";
+        }
+
+        @Override
+        public ItemStack[] load(UUID backpackUuid) {
+            return null;
+        }
+
+        @Override
+        public void store(UUID backpackUuid, ItemStack[] contents) throws IOException {
+            if (failing) {
+                throw new IOException("disk full");
+            }
+            writes.add("store " + contents.length);
+        }
+
+        @Override
+        public void delete(UUID backpackUuid) throws IOException {
+            if (failing) {
+                throw new IOException("disk full");
+            }
+            writes.add("delete");
+        }
+
+        @Override
+        public boolean exists(UUID backpackUuid) {
+            return false;
+        }
+
+        @Override
+        public List<UUID> keys() {
+            return List.of();
+        }
+
+        @Override
+        public void sync() {
+            syncs++;
+        }
+    }
+
+    /**
+     * Create a writer that runs everything on the calling thread.
+     *
+     * @param storage the storage to write to
+     * @return the writer
+     */
+    private static SnapshotWriter writer(BackpackStorage storage) {
+        return new SnapshotWriter(storage, Runnable::run, backpackUuid -> Runnable::run, LOGGER);
+    }
+
+    @Test
+    void snapshotsQueuedBeforeADrainBecomeOneBatch() {
+        FlakyStorage storage = new FlakyStorage();
+        storage.failing = false;
+        // Holds the drain loop back, like a flush interval that has not run yet
+        Queue<Runnable> io = new ArrayDeque<>();
+        SnapshotWriter writer = new SnapshotWriter(storage, io::add,
+            backpackUuid -> Runnable::run, LOGGER);
+
+        writer.submit(BackpackSnapshot.of(BACKPACK, new ItemStack[9]));
+        writer.submit(BackpackSnapshot.of(BACKPACK, new ItemStack[18]));
+        writer.submit(BackpackSnapshot.of(OTHER, new ItemStack[27]));
+        writer.submit(BackpackSnapshot.of(BACKPACK, new ItemStack[27]));
+
+        // One drain loop was scheduled, the newest snapshot of each backpack is written once
+        assertEquals(1, io.size());
+        assertEquals(27, writer.getPending(BACKPACK).getContents().length);
+        io.poll().run();
+        assertEquals(List.of("store 27", "store 27"), storage.writes);
+        assertEquals(1, storage.syncs);
+        assertTrue(io.isEmpty());
+    }
+
+    @Test
+    void unchangedSnapshotIsNotQueued() {
+        FlakyStorage storage = new FlakyStorage();
+        storage.failing = false;
+        Queue<Runnable> io = new ArrayDeque<>();
+        SnapshotWriter writer = new SnapshotWriter(storage, io::add,
+            backpackUuid -> Runnable::run, LOGGER);
+        BackpackSnapshot baseline = BackpackSnapshot.of(BACKPACK, new ItemStack[9]);
+
+        writer.submit(BackpackSnapshot.capture(BACKPACK,
+            BackpackSnapshotTest.inventory(new ItemStack[9]), baseline));
+
+        assertTrue(io.isEmpty());
+        assertNull(writer.getPending(BACKPACK));
+    }
+
+    @Test
+    void drainWritesQueuedSnapshotsRightAway() {
+        FlakyStorage storage = new FlakyStorage();
+        storage.failing = false;
+        // A drain loop that never runs, as when a backpack is closed during shutdown
+        SnapshotWriter writer = new SnapshotWriter(storage, runnable -> { },
+            backpackUuid -> Runnable::run, LOGGER);
+
+        writer.submit(BackpackSnapshot.of(BACKPACK, new ItemStack[9]));
+
+        assertTrue(writer.drain());
+        assertEquals(List.of("store 9"), storage.writes);
+        assertEquals(1, storage.syncs);
+    }
+
+    @Test
+    void failedSnapshotStaysPending() {
+        FlakyStorage storage = new FlakyStorage();
+        SnapshotWriter writer = writer(storage);
+
+        writer.submit(BackpackSnapshot.of(BACKPACK, new ItemStack[9]));
+
+        assertNotNull(writer.getPending(BACKPACK));
+        assertTrue(storage.writes.isEmpty());
+    }
+
+    @Test
+    void failedSnapshotIsWrittenOnRetry() {
+        FlakyStorage storage = new FlakyStorage();
+        SnapshotWriter writer = writer(storage);
+        writer.submit(BackpackSnapshot.of(BACKPACK, new ItemStack[9]));
+
+        storage.failing = false;
+        writer.retryFailed();
+
+        assertNull(writer.getPending(BACKPACK));
+        assertEquals(List.of("store 9"), storage.writes);
+    }
+
+    @Test
+    void newerSnapshotIsMergedIntoFailedOne() {
+        FlakyStorage storage = new FlakyStorage();
+        SnapshotWriter writer = writer(storage);
+        writer.submit(BackpackSnapshot.of(BACKPACK, new ItemStack[9]));
+
+        // The deletion replaces the snapshot that never reached the disk
+        storage.failing = false;
+        writer.submit(BackpackSnapshot.deletion(BACKPACK));
+
+        assertNull(writer.getPending(BACKPACK));
+        assertEquals(List.of("delete"), storage.writes);
+    }
+
+    @Test
+    void drainReportsUnsavedSnapshots() {
+        FlakyStorage storage = new FlakyStorage();
+        SnapshotWriter writer = writer(storage);
+        writer.submit(BackpackSnapshot.of(BACKPACK, new ItemStack[9]));
+
+        assertFalse(writer.drain());
+        assertNotNull(writer.getPending(BACKPACK));
+
+        storage.failing = false;
+        assertTrue(writer.drain());
+        assertNull(writer.getPending(BACKPACK));
+    }
+}
@@ -0,0 +1,208 @@
+package com.shweit.expendablebackpacks.storage.codec;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import org.bukkit.inventory.ItemStack;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link BinaryBackpackCodec}.
+ * Real items need a running server, so item payloads are hand-written bytes read back
+ * through a recording item reader.
+ */
+class BinaryBackpackCodecTest {
+
+    private final BinaryBackpackCodec codec = new BinaryBackpackCodec();
+
+    @Test
+    void emptyBackpackRoundTrips() throws IOException {
+        ItemStack[] decoded = codec.decode(ByteBuffer.wrap(codec.encode(new ItemStack[27])));
+
+        assertEquals(27, decoded.length);
+        assertArrayEquals(new ItemStack[27], decoded);
+    }
+
+    @Test
+    void emptySlotsCostOneBitEach() {
+        // version + slot count + one bitmap word per 64 slots
+        assertEquals(1 + 2 + Long.BYTES, codec.encode(new ItemStack[9]).length);
+        assertEquals(1 + 2 + 2 * Long.BYTES, codec.encode(new ItemStack[65]).length);
+        assertEquals(1 + 2, codec.encode(new ItemStack[0]).length);
+    }
+
+    @Test
+    void recordStartsWithVersion() {
+        assertEquals(BinaryBackpackCodec.VERSION, codec.encode(new ItemStack[9])[0]);
+    }
+
+    @Test
+    void unknownVersionIsRejected() {
+        byte[] record = codec.encode(new ItemStack[9]);
+        record[0] = (byte) (BinaryBackpackCodec.VERSION + 1);
+
+        assertThrows(IOException.class, () -> codec.decode(ByteBuffer.wrap(record)));
+    }
+
+    @Test
+    void truncatedRecordIsRejected() {
+        byte[] record = codec.encode(new ItemStack[9]);
+        byte[] truncated = Arrays.copyOf(record, record.length - 1);
+
+        assertThrows(IOException.class, () -> codec.decode(ByteBuffer.wrap(truncated)));
+    }
+
+    @Test
+    void missingItemIsRejected() {
+        // Bitmap claims slot 0 holds an item, but the record ends right after it
+        ByteBuffer record = ByteBuffer.allocate(1 + 2 + Long.BYTES);
+        record.put(BinaryBackpackCodec.VERSION).putShort((short) 9).putLong(1L);
+        record.flip();
+
+        assertThrows(IOException.class, () -> codec.decode(record));
+    }
+
+    @Test
+    void deltaOfEmptiedSlotsRecordsZeroLengths() {
+        BitSet changed = new BitSet();
+        changed.set(2);
+        changed.set(5);
+
+        // header + bitmap + an empty length per changed slot
+        assertEquals(1 + 2 + Long.BYTES + 2 * Integer.BYTES,
+            codec.encodeDelta(new ItemStack[9], changed).length);
+    }
+
+    @Test
+    void deltaIgnoresSlotsPastTheEnd() {
+        BitSet changed = new BitSet();
+        changed.set(100);
+
+        assertEquals(codec.encode(new ItemStack[9]).length,
+            codec.encodeDelta(new ItemStack[9], changed).length);
+    }
+
+    @Test
+    void deltaKeepsArrayWhenSizeIsUnchanged() throws IOException {
+        BitSet changed = new BitSet();
+        changed.set(3);
+        ItemStack[] contents = new ItemStack[9];
+
+        ItemStack[] applied = codec.applyDelta(
+            ByteBuffer.wrap(codec.encodeDelta(new ItemStack[9], changed)), contents);
+
+        assertSame(contents, applied);
+        assertNull(applied[3]);
+    }
+
+    @Test
+    void deltaResizesContents() throws IOException {
+        BitSet changed = new BitSet();
+        changed.set(40);
+
+        ItemStack[] grown = codec.applyDelta(
+            ByteBuffer.wrap(codec.encodeDelta(new ItemStack[54], changed)), new ItemStack[27]);
+        assertEquals(54, grown.length);
+
+        ItemStack[] shrunk = codec.applyDelta(
+            ByteBuffer.wrap(codec.encodeDelta(new ItemStack[9], new BitSet())), new ItemStack[27]);
+        assertEquals(9, shrunk.length);
+    }
+
+    @Test
+    void corruptDeltaIsRejected() {
+        BitSet changed = new BitSet();
+        changed.set(1);
+        byte[] record = codec.encodeDelta(new ItemStack[9], changed);
+        byte[] truncated = Arrays.copyOf(record, record.length - 2);
+
+        assertThrows(IOException.class,
+            () -> codec.applyDelta(ByteBuffer.wrap(truncated), new ItemStack[9]));
+    }
+
+    /**
+     * Build a record by hand.
+     *
+     * @param slots the slot count
+     * @param bitmap the slot bitmap word
+     * @param items the length and payload of every set slot, in slot order
+     * @return the record
+     */
+    private static ByteBuffer record(int slots, long bitmap, byte[]... items) {
+        int size = 1 + 2 + Long.BYTES;
+        for (byte[] item : items) {
+            size += Integer.BYTES + item.length;
+        }
+        ByteBuffer record = ByteBuffer.allocate(size);
+        record.put(BinaryBackpackCodec.VERSION).putShort((short) slots).putLong(bitmap);
+        for (byte[] item : items) {
+            record.putInt(item.length).put(item);
+        }
+        return record.flip();
+    }
+
+    @Test
+    void itemPayloadsAreReadByTheirLength() throws IOException {
+        List<byte[]> payloads = new ArrayList<>();
+        BinaryBackpackCodec recording = new BinaryBackpackCodec(bytes -> {
+            payloads.add(bytes);
+            return null;
+        });
+        ByteBuffer record = record(9, 0b1001L, new byte[] {1, 2}, new byte[] {3, 4, 5, 6, 7});
+
+        assertEquals(9, recording.decode(record).length);
+        assertEquals(2, payloads.size());
+        assertArrayEquals(new byte[] {1, 2}, payloads.get(0));
+        assertArrayEquals(new byte[] {3, 4, 5, 6, 7}, payloads.get(1));
+        assertEquals(0, record.remaining());
+    }
+
+    @Test
+    void deltaEmptiesSlotsWithZeroLength() throws IOException {
+        List<byte[]> payloads = new ArrayList<>();
+        BinaryBackpackCodec recording = new BinaryBackpackCodec(bytes -> {
+            payloads.add(bytes);
+            return null;
+        });
+
+        recording.applyDelta(record(9, 0b110L, new byte[0], new byte[] {9}), new ItemStack[9]);
+
+        assertEquals(1, payloads.size());
+        assertArrayEquals(new byte[] {9}, payloads.get(0));
+    }
+
+    @Test
+    void negativeLengthIsRejected() {
+        ByteBuffer record = record(9, 1L, new byte[4]);
+        record.putInt(1 + 2 + Long.BYTES, -1);
+
+        assertThrows(IOException.class, () -> codec.decode(record));
+    }
+
+    @Test
+    void lengthPastTheEndIsRejected() {
+        ByteBuffer record = record(9, 1L, new byte[4]);
+        record.putInt(1 + 2 + Long.BYTES, Integer.MAX_VALUE);
+
+        assertThrows(IOException.class, () -> codec.decode(record));
+        assertThrows(IOException.class, () -> codec.applyDelta(record.rewind(), new ItemStack[9]));
+    }
+
+    @Test
+    void itemReaderFailureIsReportedAsIoException() {
+        BinaryBackpackCodec failing = new BinaryBackpackCodec(bytes -> {
+            throw new IllegalStateException("unknown item");
+        });
+
+        assertThrows(IOException.class, () -> failing.decode(record(9, 1L, new byte[] {1})));
+    }
+}